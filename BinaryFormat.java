@@ -0,0 +1,133 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Versioned binary files handed from one compiler phase to the next.
+//
+//   magic (4 ASCII bytes)  version (1 byte)
+//   records                 phase specific, see the writers and readers
+//   string table            count, then length and UTF-8 bytes per string
+//   table offset            fixed 4 byte big-endian int
+//
+// Integers inside records and the table are unsigned LEB128 varints and every
+// string in a record is an index into the table, so repeated symbols such as
+// "INSTRUC" or "V_x" are stored once. The table goes last so a writer can
+// stream its records without knowing all strings up front.
+class BinaryFormat {
+
+    static final int VERSION = 2;
+    static final String TOKENS = "TOKS";
+    static final String TREE = "TREE";
+    static final String PARSE_TABLE = "PTAB";
+
+    static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final HashMap<String, Integer> ids = new HashMap<>();
+        private final ArrayList<String> strings = new ArrayList<>();
+
+        Writer(String filePath, String magic) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(Paths.get(filePath)), 1 << 16));
+            out.writeBytes(magic);
+            out.writeByte(VERSION);
+        }
+
+        void writeInt(int value) throws IOException {
+            while ((value & ~0x7f) != 0) {
+                out.writeByte((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        void writeBoolean(boolean value) throws IOException {
+            out.writeByte(value ? 1 : 0);
+        }
+
+        void writeString(String value) throws IOException {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = strings.size();
+                ids.put(value, id);
+                strings.add(value);
+            }
+            writeInt(id);
+        }
+
+        @Override
+        public void close() throws IOException {
+            int tableOffset = out.size();
+            writeInt(strings.size());
+            for (String value : strings) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(tableOffset);
+            out.close();
+        }
+    }
+
+    static class Reader {
+        private final ByteBuffer bytes;
+        private final String[] strings;
+        private final int recordsEnd;
+
+        Reader(String filePath, String magic) throws IOException {
+            this(Files.readAllBytes(Paths.get(filePath)), filePath, magic);
+        }
+
+        Reader(byte[] data, String name, String magic) throws IOException {
+            bytes = ByteBuffer.wrap(data);
+            if (bytes.remaining() < magic.length() + 5
+                    || !magic.equals(new String(bytes.array(), 0, magic.length(), StandardCharsets.US_ASCII))) {
+                throw new IOException(name + " is not a " + magic + " file");
+            }
+            bytes.position(magic.length());
+            int version = bytes.get();
+            if (version != VERSION) {
+                throw new IOException(name + " has unsupported version " + version);
+            }
+            int recordsStart = bytes.position();
+
+            recordsEnd = bytes.getInt(bytes.limit() - 4);
+            bytes.position(recordsEnd);
+            strings = new String[readInt()];
+            for (int i = 0; i < strings.length; i++) {
+                int length = readInt();
+                strings[i] = new String(bytes.array(), bytes.position(), length, StandardCharsets.UTF_8);
+                bytes.position(bytes.position() + length);
+            }
+            bytes.position(recordsStart);
+        }
+
+        boolean hasMore() {
+            return bytes.position() < recordsEnd;
+        }
+
+        int readInt() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes.get();
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        boolean readBoolean() {
+            return bytes.get() != 0;
+        }
+
+        String readString() {
+            return strings[readInt()];
+        }
+    }
+}
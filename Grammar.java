@@ -0,0 +1,141 @@
+import java.util.HashMap;
+
+// The grammar p8.csv was built for, compiled once into integer tables.
+//
+// Symbols share one id space: terminals come first, in the column order of
+// p8.csv, then the non-terminals. The left-hand side of a production is kept
+// as a non-terminal index (symbol id minus TERMINAL_COUNT) since that is what
+// indexes the GOTO table.
+class Grammar {
+
+    static final String[] TERMINALS = {
+        "main", ",", "num", "text", "V", "begin", "end", ";", "skip", "halt", "print", "return",
+        "N", "T", "<", "input", "=", "(", ")", "if", "then", "else", "not", "sqrt", "or", "and",
+        "eq", "grt", "add", "sub", "mul", "div", "F", "void", "{", "}", "$"
+    };
+
+    static final String[] NONTERMINALS = {
+        "PROG", "GLOBVARS", "VTYP", "VNAME", "ALGO", "INSTRUC", "COMMAND", "ATOMIC", "CONST",
+        "ASSIGN", "CALL", "BRANCH", "TERM", "OP", "ARG", "COND", "SIMPLE", "COMPOSIT", "UNOP",
+        "BINOP", "FNAME", "FUNCTIONS", "DECL", "HEADER", "FTYP", "BODY", "PROLOG", "EPILOG",
+        "LOCVARS", "SUBFUNCS"
+    };
+
+    private static final String[] PRODUCTIONS = {
+        "PROG ::= main GLOBVARS ALGO FUNCTIONS",
+        "GLOBVARS ::= ",
+        "GLOBVARS ::= VTYP VNAME , GLOBVARS",
+        "VTYP ::= num",
+        "VTYP ::= text",
+        "VNAME ::= V",
+        "ALGO ::= begin INSTRUC end",
+        "INSTRUC ::= ",
+        "INSTRUC ::= COMMAND ; INSTRUC",
+        "COMMAND ::= skip",
+        "COMMAND ::= halt",
+        "COMMAND ::= print ATOMIC",
+        "COMMAND ::= ASSIGN",
+        "COMMAND ::= CALL",
+        "COMMAND ::= BRANCH",
+        "COMMAND ::= return ATOMIC",
+        "ATOMIC ::= VNAME",
+        "ATOMIC ::= CONST",
+        "CONST ::= N",
+        "CONST ::= T",
+        "ASSIGN ::= VNAME < input",
+        "ASSIGN ::= VNAME = TERM",
+        "CALL ::= FNAME ( ATOMIC , ATOMIC , ATOMIC )",
+        "BRANCH ::= if COND then ALGO else ALGO",
+        "TERM ::= ATOMIC",
+        "TERM ::= CALL",
+        "TERM ::= OP",
+        "OP ::= UNOP ( ARG )",
+        "OP ::= BINOP ( ARG , ARG )",
+        "ARG ::= ATOMIC",
+        "ARG ::= OP",
+        "COND ::= SIMPLE",
+        "COND ::= COMPOSIT",
+        "SIMPLE ::= BINOP ( ATOMIC , ATOMIC )",
+        "COMPOSIT ::= BINOP ( SIMPLE , SIMPLE )",
+        "COMPOSIT ::= UNOP ( SIMPLE )",
+        "UNOP ::= not",
+        "UNOP ::= sqrt",
+        "BINOP ::= or",
+        "BINOP ::= and",
+        "BINOP ::= eq",
+        "BINOP ::= grt",
+        "BINOP ::= add",
+        "BINOP ::= sub",
+        "BINOP ::= mul",
+        "BINOP ::= div",
+        "FNAME ::= F",
+        "FUNCTIONS ::= ",
+        "FUNCTIONS ::= DECL FUNCTIONS",
+        "DECL ::= HEADER BODY",
+        "HEADER ::= FTYP FNAME ( VNAME , VNAME , VNAME )",
+        "FTYP ::= num",
+        "FTYP ::= void",
+        "BODY ::= PROLOG LOCVARS ALGO EPILOG SUBFUNCS end",
+        "PROLOG ::= {",
+        "EPILOG ::= }",
+        "LOCVARS ::= VTYP VNAME , VTYP VNAME , VTYP VNAME ,",
+        "SUBFUNCS ::= FUNCTIONS"
+    };
+
+    static final int TERMINAL_COUNT = TERMINALS.length;
+    static final int NONTERMINAL_COUNT = NONTERMINALS.length;
+    static final int PRODUCTION_COUNT = PRODUCTIONS.length;
+
+    private static final HashMap<String, Integer> symbolIds = new HashMap<>();
+
+    static final int[] LHS = new int[PRODUCTION_COUNT];
+    static final int[] RHS_LENGTH = new int[PRODUCTION_COUNT];
+    static final int[][] RHS = new int[PRODUCTION_COUNT][];
+
+    static {
+        for (int i = 0; i < TERMINAL_COUNT; i++) {
+            symbolIds.put(TERMINALS[i], i);
+        }
+        for (int i = 0; i < NONTERMINAL_COUNT; i++) {
+            symbolIds.put(NONTERMINALS[i], TERMINAL_COUNT + i);
+        }
+
+        for (int p = 0; p < PRODUCTION_COUNT; p++) {
+            String[] sides = PRODUCTIONS[p].split("::=");
+            LHS[p] = symbolIds.get(sides[0].trim()) - TERMINAL_COUNT;
+            String rhs = sides[1].trim();
+            String[] symbols = rhs.isEmpty() ? new String[0] : rhs.split("\\s+");
+            RHS_LENGTH[p] = symbols.length;
+            RHS[p] = new int[symbols.length];
+            for (int i = 0; i < symbols.length; i++) {
+                RHS[p][i] = symbolIds.get(symbols[i]);
+            }
+        }
+    }
+
+    static final int END = terminal("$");
+
+    // Terminal id of a token as it appears in the parser input, or -1.
+    static int terminal(String name) {
+        Integer id = symbolIds.get(name);
+        return id != null && id < TERMINAL_COUNT ? id : -1;
+    }
+
+    // Non-terminal index of a name, or -1.
+    static int nonterminal(String name) {
+        Integer id = symbolIds.get(name);
+        return id != null && id >= TERMINAL_COUNT ? id - TERMINAL_COUNT : -1;
+    }
+
+    static boolean isTerminal(int symbol) {
+        return symbol < TERMINAL_COUNT;
+    }
+
+    static String symbolName(int symbol) {
+        return symbol < TERMINAL_COUNT ? TERMINALS[symbol] : NONTERMINALS[symbol - TERMINAL_COUNT];
+    }
+
+    static String production(int index) {
+        return PRODUCTIONS[index];
+    }
+}
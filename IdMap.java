@@ -0,0 +1,41 @@
+import java.util.Arrays;
+
+// A hash map keyed by Identifiers ids, for tables such as a scope's
+// variables that are looked up by name far more often than they change.
+// An IntMap takes each id to the index of its value, so lookups neither box
+// the key nor allocate. get() returns null for a missing id.
+final class IdMap<V> {
+
+    private final IntMap indexes = new IntMap();
+    private Object[] values = new Object[8];
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    V get(int id) {
+        int index = indexes.get(id);
+        return index >= 0 ? (V) values[index] : null;
+    }
+
+    boolean containsKey(int id) {
+        return get(id) != null;
+    }
+
+    void put(int id, V value) {
+        int index = indexes.get(id);
+        if (index >= 0) {
+            values[index] = value;
+            return;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        indexes.putIfAbsent(id, size);
+        values[size++] = value;
+    }
+
+    void putIfAbsent(int id, V value) {
+        if (get(id) == null) {
+            put(id, value);
+        }
+    }
+}
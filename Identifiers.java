@@ -0,0 +1,114 @@
+import java.util.Arrays;
+
+// The JVM-wide pool of identifier names. The lexer interns every distinct V_
+// and F_ name of a token buffer once the buffer is filled, and the later
+// phases refer to a name by its dense int id, so two names are compared with
+// one int compare and each distinct name is kept as one String however often
+// it occurs.
+//
+// Interning takes the class lock and can be called from any thread; name()
+// reads without locking, which is safe for any id the caller got from an
+// intern call that happened before.
+final class Identifiers {
+
+    // Ids are never released: a token buffer or tree may hold an id for as
+    // long as it lives, and nothing tracks when the last one goes. The pool
+    // therefore keeps every name any compile has seen until the JVM exits.
+    // For the GUI that is the names of the programs typed into one session,
+    // a few bytes each, which costs less than reference counting every id.
+    private static int[] slots = new int[1024];
+    private static int[] hashes = new int[512];
+    private static volatile String[] names = new String[512];
+    private static int count;
+
+    private Identifiers() {
+    }
+
+    // Id of text[start, end), hashed like String.hashCode so a name is found
+    // without building a String unless it is new.
+    static int intern(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return intern(text, start, end, hash);
+    }
+
+    static int intern(String name) {
+        return intern(name, 0, name.length(), name.hashCode());
+    }
+
+    // Id of a name that has been interned, or -1.
+    static synchronized int find(String name) {
+        int hash = name.hashCode();
+        int mask = slots.length - 1;
+        for (int slot = spread(hash) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(names[id], name, 0, name.length())) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    static String name(int id) {
+        return names[id];
+    }
+
+    // Slots hold id + 1 so that 0 marks an empty one. hash must be the
+    // String.hashCode of the name.
+    static synchronized int intern(CharSequence text, int start, int end, int hash) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && matches(names[id], text, start, end)) {
+                return id;
+            }
+        }
+
+        String name = text instanceof String && start == 0 && end == text.length()
+            ? (String) text : text.subSequence(start, end).toString();
+        int id = count;
+        if (id == hashes.length) {
+            hashes = Arrays.copyOf(hashes, id * 2);
+            names = Arrays.copyOf(names, id * 2);
+        }
+        hashes[id] = hash;
+        names[id] = name;
+        slots[slot] = id + 1;
+        count++;
+        if (count * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private static void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = spread(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
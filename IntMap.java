@@ -0,0 +1,73 @@
+import java.util.Arrays;
+
+// An int to int hash map with open addressing, for indexes keyed by numbers
+// such as UNIDs where boxing every key and value would cost more than the
+// lookups themselves. Values must not be negative; get() returns -1 for a
+// missing key.
+final class IntMap {
+
+    private int[] keys = new int[16];
+    private int[] values = new int[16];
+    private int size;
+
+    IntMap() {
+        Arrays.fill(values, -1);
+    }
+
+    int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; values[slot] >= 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return -1;
+    }
+
+    // Stores value under key unless the key is already present, and returns
+    // whether it did.
+    boolean putIfAbsent(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value " + value);
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; values[slot] >= 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return false;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(values, -1);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] >= 0) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (values[slot] >= 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    // Keys like UNIDs and identifier ids are runs of consecutive numbers, so
+    // spread them before masking.
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,21 +1,22 @@
     import java.io.*;
     import java.util.*;
-    import java.util.regex.*;
+    import java.util.concurrent.ForkJoinPool;
+    import java.util.concurrent.ForkJoinTask;
+    import javax.xml.stream.XMLStreamException;
+    import javax.xml.stream.XMLStreamWriter;
 
 
     public class Lexer {
 
-        private static final LinkedHashMap<String, TokenType> reservedKeywords = new LinkedHashMap<>();
-        
-        private static final Pattern V_NAMES_PATTERN = Pattern.compile("V_[a-z]([a-z]|[0-9])*");
-        private static final Pattern F_NAMES_PATTERN = Pattern.compile("F_[a-z]([a-z]|[0-9])*");
-        private static final Pattern TEXT_SNIPPET_PATTERN = Pattern.compile("\"[A-Z][a-z]{0,7}\"");
-        private static final Pattern N_NUMBERS_PATTERN = Pattern.compile(
-            "-?(0|[1-9][0-9]*)\\.[0-9]+|-?[1-9][0-9]*|0"
-        );
-        
-        
+        private static final int MIN_CHUNK = 1 << 16;
+
+        private boolean memoryMapped = false;
+        private ForkJoinPool pool = null;
+        private TokenBuffer lastTokens = null;
 
+        static final LinkedHashMap<String, TokenType> reservedKeywords = new LinkedHashMap<>();
+        private static final String[] keywordTexts = new String[TokenType.values().length];
+        
         static {
             reservedKeywords.put("main", TokenType.MAIN);
             reservedKeywords.put("num", TokenType.NUM);
@@ -48,117 +49,354 @@
             reservedKeywords.put("{", TokenType.LBRACE);
             reservedKeywords.put("}", TokenType.RBRACE);
             reservedKeywords.put("return", TokenType.RETURN);
+
+            for (Map.Entry<String, TokenType> entry : reservedKeywords.entrySet()) {
+                keywordTexts[entry.getValue().ordinal()] = entry.getKey();
+            }
+        }
+
+        static String keywordText(TokenType type) {
+            return keywordTexts[type.ordinal()];
+        }
+
+        public TokenStream tokenStream(Reader reader) {
+            return new TokenStream(reader);
+        }
+
+        // Reads the source through a memory mapping instead of a Reader. Only
+        // valid for ASCII sources, which every well-formed program is.
+        public void setMemoryMapped(boolean memoryMapped) {
+            this.memoryMapped = memoryMapped;
+        }
+
+        // Splits large sources into chunks of whole lines and lexes them on the
+        // given pool. Pass null to lex on the calling thread.
+        public void setParallel(ForkJoinPool pool) {
+            this.pool = pool;
         }
 
         public String tokenizeToXML(String filePath) throws IOException, IllegalArgumentException {
-            StringBuilder xmlOutput = new StringBuilder();
-            xmlOutput.append("<TOKENSTREAM>\n");
-            BufferedReader reader = new BufferedReader(new FileReader(filePath));
+            return toXML(tokenizeFile(filePath));
+        }
 
-            String line;
-            int id = 1;
+        public String toXML(TokenBuffer tokens) {
+            StringWriter xmlOutput = new StringWriter();
+            try {
+                XMLStreamWriter writer = XMLOutput.writer(xmlOutput);
+                writeTokens(writer, tokens);
+                writer.close();
+            } catch (XMLStreamException e) {
+                throw new IllegalStateException(e);
+            }
+            return xmlOutput.toString();
+        }
 
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
+        public TokenBuffer tokenizeFile(String filePath) throws IOException, IllegalArgumentException {
+            CharSequence source = memoryMapped ? MappedSource.map(filePath) : new String(readSource(filePath));
+            return pool != null ? tokenizeParallel(source, pool) : tokenize(source);
+        }
 
-                for (int i = 0; i < line.length(); ) {
-                    if (Character.isWhitespace(line.charAt(i))) {
-                        i++;
-                        continue;
-                    }
+        // Lexes a whole source text into a TokenBuffer. Lines are handled the
+        // way BufferedReader.readLine() and String.trim() would split them, so
+        // tokens and error positions match the line-by-line reader.
+        public TokenBuffer tokenize(CharSequence source) throws IllegalArgumentException {
+            TokenBuffer tokens = tokenizeRange(source, 0, source.length());
+            tokens.internNames();
+            return tokens;
+        }
 
-                    Token token = null;
+        // No token spans a line, so the source can be cut at line boundaries
+        // and every chunk lexed on its own. Token ids are positions in the
+        // buffer, so joining the chunk buffers in order numbers the tokens
+        // exactly as a sequential pass would. The chunks number their names
+        // locally and the join interns them, chunk by chunk, so no worker waits
+        // on the Identifiers lock and names get the same ids as in a sequential
+        // pass. If several chunks fail, the error from the earliest one is the
+        // one a sequential pass would have hit.
+        public TokenBuffer tokenizeParallel(CharSequence source, ForkJoinPool pool) throws IllegalArgumentException {
+            int length = source.length();
+            int chunkSize = Math.max(MIN_CHUNK, length / (pool.getParallelism() * 4));
+            if (length <= chunkSize) {
+                return tokenize(source);
+            }
 
-                    token = matchReserved(line.substring(i));
-                    if (token != null) {
-                        xmlOutput.append(formatToken(token, id++));
-                        i += token.getValue().length();
-                        continue;
-                    }
+            List<ForkJoinTask<TokenBuffer>> chunks = new ArrayList<>();
+            int chunkStart = 0;
+            while (chunkStart < length) {
+                int chunkEnd = nextLineStart(source, Math.min(length, chunkStart + chunkSize));
+                int from = chunkStart;
+                chunks.add(pool.submit(() -> tokenizeRange(source, from, chunkEnd)));
+                chunkStart = chunkEnd;
+            }
 
-                    token = matchPattern(F_NAMES_PATTERN, line.substring(i), TokenType.F_NAMES);
-                    if (token != null) {
-                        xmlOutput.append(formatToken(token, id++));
-                        i += token.getValue().length();
-                        continue;
-                    }
+            int total = 0;
+            for (ForkJoinTask<TokenBuffer> chunk : chunks) {
+                total += joinChunk(chunk).size();
+            }
+            TokenBuffer tokens = new TokenBuffer(source, total);
+            for (ForkJoinTask<TokenBuffer> chunk : chunks) {
+                tokens.addAll(chunk.join());
+            }
+            return tokens;
+        }
 
-                    token = matchPattern(V_NAMES_PATTERN, line.substring(i), TokenType.V_NAMES);
-                    if (token != null) {
-                        xmlOutput.append(formatToken(token, id++));
-                        i += token.getValue().length();
-                        continue;
-                    }
+        // join() rethrows an exception from another worker as a new instance
+        // wrapping the original; unwrap it so the lexical error message is the
+        // same as in a sequential pass.
+        private TokenBuffer joinChunk(ForkJoinTask<TokenBuffer> chunk) {
+            try {
+                return chunk.join();
+            } catch (IllegalArgumentException e) {
+                throw e.getCause() instanceof IllegalArgumentException ? (IllegalArgumentException) e.getCause() : e;
+            }
+        }
 
-                    token = matchPattern(TEXT_SNIPPET_PATTERN, line.substring(i), TokenType.TEXT_SNIPPET);
-                    if (token != null) {
-                        xmlOutput.append(formatToken(token, id++));
-                        i += token.getValue().length();
-                        continue;
-                    }
+        private TokenBuffer tokenizeRange(CharSequence source, int from, int to) {
+            TokenBuffer tokens = new TokenBuffer(source, (to - from) / 4);
+            TokenDFA dfa = new TokenDFA();
 
-                    token = matchPattern(N_NUMBERS_PATTERN, line.substring(i), TokenType.N_NUMBERS);
-                    if (token != null) {
-                        xmlOutput.append(formatToken(token, id++));
-                        i += token.getValue().length();
-                        continue;
-                    }
+            int lineStart = from;
+            while (lineStart < to) {
+                int lineEnd = lineStart;
+                while (lineEnd < to && source.charAt(lineEnd) != '\n' && source.charAt(lineEnd) != '\r') {
+                    lineEnd++;
+                }
+                tokenizeLine(source, lineStart, lineEnd, dfa, tokens);
+                lineStart = nextLineStart(source, lineEnd);
+            }
+            return tokens;
+        }
+
+        // Returns the start of the line after the one containing index, or the
+        // end of the source.
+        private int nextLineStart(CharSequence source, int index) {
+            int length = source.length();
+            while (index < length && source.charAt(index) != '\n' && source.charAt(index) != '\r') {
+                index++;
+            }
+            if (index < length && source.charAt(index) == '\r') {
+                index++;
+                if (index < length && source.charAt(index) == '\n') {
+                    index++;
+                }
+            } else if (index < length) {
+                index++;
+            }
+            return index;
+        }
+
+        private void tokenizeLine(CharSequence source, int start, int end, TokenDFA dfa, TokenBuffer tokens) {
+            while (start < end && source.charAt(start) <= ' ') {
+                start++;
+            }
+            while (end > start && source.charAt(end - 1) <= ' ') {
+                end--;
+            }
+
+            for (int i = start; i < end; ) {
+                if (Character.isWhitespace(source.charAt(i))) {
+                    i++;
+                    continue;
+                }
+
+                if (!dfa.match(source, i, end)) {
+                    throw new IllegalArgumentException("Lexical Error: Unrecognized token at index " + (i - start) + ": '" + source.subSequence(i, end) + "'");
+                }
+
+                tokens.add(dfa.tokenType, i, dfa.tokenEnd);
+                i = dfa.tokenEnd;
+            }
+        }
+
+        // Result of re-lexing after an edit: the updated tokens, and the range
+        // [firstChanged, oldEnd) of the previous buffer that was replaced by
+        // [firstChanged, newEnd) of the new one.
+        public static class Relexed {
+            public final TokenBuffer tokens;
+            public final int firstChanged;
+            public final int oldEnd;
+            public final int newEnd;
 
-                    char currentChar = line.charAt(i);
-                    if (isSymbol(currentChar)) {
-                        token = new Token(getTokenTypeForSymbol(currentChar), String.valueOf(currentChar));
-                        xmlOutput.append(formatToken(token, id++));
-                        i++;
-                        continue;
+            Relexed(TokenBuffer tokens, int firstChanged, int oldEnd, int newEnd) {
+                this.tokens = tokens;
+                this.firstChanged = firstChanged;
+                this.oldEnd = oldEnd;
+                this.newEnd = newEnd;
+            }
+        }
+
+        // Re-lexes a buffer after replacing removed characters at offset of its
+        // source with inserted. Tokens that end before the edit are kept, and
+        // scanning restarts at the end of the last of them: a finished token
+        // never looks more than one character past its end, so nothing before
+        // that point can change. Scanning stops as soon as a new token starts,
+        // after the inserted text, exactly where an old token started once the
+        // edit's shift is applied; from there on the old tokens are reused.
+        //
+        // Building the new source and copying the kept tokens, with their
+        // offsets shifted, still takes time in proportion to the whole file.
+        // That is deliberate: the editor hands over its whole text and the
+        // parser reads the whole buffer afterwards, so a piece table would
+        // only save two array copies that cost far less than either.
+        public Relexed relex(TokenBuffer previous, int offset, int removed, CharSequence inserted) throws IllegalArgumentException {
+            CharSequence oldSource = previous.source;
+            String source = new StringBuilder(oldSource.length() - removed + inserted.length())
+                .append(oldSource, 0, offset)
+                .append(inserted)
+                .append(oldSource, offset + removed, oldSource.length())
+                .toString();
+            int shift = inserted.length() - removed;
+            int editEnd = offset + inserted.length();
+            int length = source.length();
+
+            int first = previous.firstEndingAtOrAfter(offset);
+            int reuse = first;
+            int pos = first > 0 ? previous.end(first - 1) : 0;
+            TokenBuffer scanned = new TokenBuffer(source);
+            TokenDFA dfa = new TokenDFA();
+
+            while (pos < length) {
+                char c = source.charAt(pos);
+                if (Character.isWhitespace(c) || (c <= ' ' && isTrimmed(source, pos))) {
+                    pos++;
+                    continue;
+                }
+
+                if (pos >= editEnd) {
+                    while (reuse < previous.size() && previous.start(reuse) + shift < pos) {
+                        reuse++;
                     }
+                    if (reuse < previous.size() && previous.start(reuse) + shift == pos) {
+                        break;
+                    }
+                }
 
-                    throw new IllegalArgumentException("Lexical Error: Unrecognized token at index " + i + ": '" + line.substring(i) + "'");
+                if (!dfa.match(source, pos, length)) {
+                    throw lexicalError(source, pos);
                 }
+                scanned.add(dfa.tokenType, pos, dfa.tokenEnd);
+                pos = dfa.tokenEnd;
+            }
+            if (pos >= length) {
+                reuse = previous.size();
             }
 
-            reader.close();
-            xmlOutput.append("</TOKENSTREAM>");
-            return xmlOutput.toString();
+            TokenBuffer tokens = new TokenBuffer(source, first + scanned.size() + previous.size() - reuse);
+            tokens.addRange(previous, 0, first, 0);
+            tokens.addAll(scanned);
+            tokens.addRange(previous, reuse, previous.size(), shift);
+            return new Relexed(tokens, first, reuse, first + scanned.size());
         }
 
-        private Token matchReserved(String input) {
-            for (Map.Entry<String, TokenType> entry : reservedKeywords.entrySet()) {
-                String key = entry.getKey();
-                if (input.startsWith(key)) {
-                    return new Token(entry.getValue(), key);
+        // A character at or below ' ' that is not whitespace is only allowed
+        // where String.trim() would have removed it: before the first or after
+        // the last visible character of its line.
+        private boolean isTrimmed(CharSequence source, int pos) {
+            boolean leading = true;
+            for (int i = pos - 1; i >= 0 && source.charAt(i) != '\n' && source.charAt(i) != '\r'; i--) {
+                if (source.charAt(i) > ' ') {
+                    leading = false;
+                    break;
+                }
+            }
+            if (leading) {
+                return true;
+            }
+            for (int i = pos + 1; i < source.length() && source.charAt(i) != '\n' && source.charAt(i) != '\r'; i++) {
+                if (source.charAt(i) > ' ') {
+                    return false;
                 }
             }
-            return null;
+            return true;
         }
 
-        private Token matchPattern(Pattern pattern, String input, TokenType type) {
-            Matcher matcher = pattern.matcher(input);
-            if (matcher.lookingAt()) {
-                return new Token(type, matcher.group());
+        private IllegalArgumentException lexicalError(CharSequence source, int pos) {
+            int start = pos;
+            while (start > 0 && source.charAt(start - 1) != '\n' && source.charAt(start - 1) != '\r') {
+                start--;
+            }
+            while (source.charAt(start) <= ' ') {
+                start++;
+            }
+            int end = pos;
+            while (end < source.length() && source.charAt(end) != '\n' && source.charAt(end) != '\r') {
+                end++;
+            }
+            while (source.charAt(end - 1) <= ' ') {
+                end--;
             }
-            return null;
+            return new IllegalArgumentException("Lexical Error: Unrecognized token at index " + (pos - start) + ": '" + source.subSequence(pos, end) + "'");
         }
 
-        private String formatToken(Token token, int id) {
-            String tokenValue = escapeXMLCharacters(token.getValue());
-            return "<TOK>\n" +
-                "<ID>" + id + "</ID>\n" +
-                "<CLASS>" + getTokenClass(token.getType()) + "</CLASS>\n" +
-                "<WORD>" + tokenValue + "</WORD>\n" +
-                "</TOK>\n";
+        static char[] readSource(String filePath) throws IOException {
+            try (Reader reader = new FileReader(filePath)) {
+                char[] source = new char[8192];
+                int length = 0;
+                int read;
+                while ((read = reader.read(source, length, source.length - length)) > 0) {
+                    length += read;
+                    if (length == source.length) {
+                        source = Arrays.copyOf(source, length * 2);
+                    }
+                }
+                return Arrays.copyOf(source, length);
+            }
         }
-        
-        private String escapeXMLCharacters(String input) {
-            if (input == null) {
-                return null;
+
+        private void writeTokens(XMLStreamWriter writer, TokenBuffer tokens) throws XMLStreamException {
+            char[] word = new char[64];
+            writer.writeStartElement("TOKENSTREAM");
+            writer.writeCharacters("\n");
+            for (int i = 0; i < tokens.size(); i++) {
+                writer.writeStartElement("TOK");
+                writer.writeCharacters("\n");
+                writer.writeStartElement("ID");
+                writer.writeCharacters(Integer.toString(i + 1));
+                writer.writeEndElement();
+                writer.writeCharacters("\n");
+                writer.writeStartElement("CLASS");
+                writer.writeCharacters(getTokenClass(tokens.type(i)));
+                writer.writeEndElement();
+                writer.writeCharacters("\n");
+                writer.writeStartElement("WORD");
+                if (word.length < tokens.length(i)) {
+                    word = new char[Math.max(word.length * 2, tokens.length(i))];
+                }
+                writeWord(writer, tokens, i, word);
+                writer.writeEndElement();
+                writer.writeCharacters("\n");
+                writer.writeEndElement();
+                writer.writeCharacters("\n");
             }
-            return input.replace("&", "&amp;")
-                        .replace("<", "&lt;")
-                        .replace(">", "&gt;")
-                        .replace("\"", "&quot;")
-                        .replace("'", "&apos;");
+            writer.writeEndElement();
+            writer.flush();
+        }
+
+        // The stream writer escapes &, < and > itself; quotes are not escaped in
+        // character data, so they are written as entity references to keep the
+        // token words exactly as they have always appeared in output.xml.
+        private void writeWord(XMLStreamWriter writer, TokenBuffer tokens, int index, char[] word) throws XMLStreamException {
+            String keyword = Lexer.keywordText(tokens.type(index));
+            int length = tokens.length(index);
+            if (keyword != null) {
+                keyword.getChars(0, length, word, 0);
+            } else {
+                int start = tokens.start(index);
+                for (int i = 0; i < length; i++) {
+                    word[i] = tokens.source.charAt(start + i);
+                }
+            }
+            int runStart = 0;
+            for (int i = 0; i < length; i++) {
+                char c = word[i];
+                if (c == '"' || c == '\'') {
+                    writer.writeCharacters(word, runStart, i - runStart);
+                    writer.writeEntityRef(c == '"' ? "quot" : "apos");
+                    runStart = i + 1;
+                }
+            }
+            writer.writeCharacters(word, runStart, length - runStart);
         }
-        
 
         private String getTokenClass(TokenType type) {
             switch (type) {
@@ -206,39 +444,98 @@
             }
         }
 
-        private boolean isSymbol(char c) {
-            return c == ';' || c == '(' || c == ')' || c == ',' || c == '{' || c == '}';
+        public void saveXMLToFile(String xmlOutput, String outputFilePath) throws IOException {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath));
+            writer.write(xmlOutput);
+            writer.close();
         }
 
-        private TokenType getTokenTypeForSymbol(char c) {
-            switch (c) {
-                case ';': return TokenType.SEMICOLON;
-                case '(': return TokenType.LPAREN;
-                case ')': return TokenType.RPAREN;
-                case ',': return TokenType.COMMA;
-                case '{': return TokenType.LBRACE;
-                case '}': return TokenType.RBRACE;
-                default: return null;
+        // One record per token: its class and its word, both as string table
+        // indexes, in the order the parser reads them.
+        public void saveTokensToFile(TokenBuffer tokens, String outputFilePath) throws IOException {
+            try (BinaryFormat.Writer out = new BinaryFormat.Writer(outputFilePath, BinaryFormat.TOKENS)) {
+                for (int i = 0; i < tokens.size(); i++) {
+                    out.writeString(getTokenClass(tokens.type(i)));
+                    out.writeString(tokens.text(i));
+                }
             }
         }
 
-        public void saveXMLToFile(String xmlOutput, String outputFilePath) throws IOException {
-            BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath));
-            writer.write(xmlOutput);
-            writer.close();
+        private String saveTokens(TokenBuffer tokens) throws IOException {
+            saveTokensToFile(tokens, "tokens.bin");
+            if (!XMLOutput.ENABLED) {
+                return "tokens.bin";
+            }
+            saveXMLToFile(tokens, "output.xml");
+            return "output.xml";
+        }
+
+        public void saveXMLToFile(TokenBuffer tokens, String outputFilePath) throws IOException {
+            try (OutputStream out = XMLOutput.open(outputFilePath)) {
+                XMLStreamWriter writer = XMLOutput.writer(out);
+                writeTokens(writer, tokens);
+                writer.close();
+            } catch (XMLStreamException e) {
+                throw new IOException("Could not write " + outputFilePath, e);
+            }
+        }
+
+        // Lexes the editor text, in parallel chunks if setParallel was given a
+        // pool. After the first successful call only the part that differs
+        // from the previously lexed text is scanned again.
+        // tokens.bin and output.xml are still written out whole, because the
+        // parser reads the one and the other is a full export.
+        public boolean Lex(String source) {
+            try {
+                TokenBuffer tokens;
+                // A mapped source is not reused: the file under it is rewritten
+                // before every compile.
+                if (lastTokens == null || lastTokens.source instanceof MappedSource) {
+                    tokens = pool != null ? tokenizeParallel(source, pool) : tokenize(source);
+                } else {
+                    CharSequence previous = lastTokens.source;
+                    int prefix = 0;
+                    int maxPrefix = Math.min(previous.length(), source.length());
+                    while (prefix < maxPrefix && previous.charAt(prefix) == source.charAt(prefix)) {
+                        prefix++;
+                    }
+                    int suffix = 0;
+                    int maxSuffix = maxPrefix - prefix;
+                    while (suffix < maxSuffix && previous.charAt(previous.length() - 1 - suffix) == source.charAt(source.length() - 1 - suffix)) {
+                        suffix++;
+                    }
+                    tokens = relex(lastTokens, prefix, previous.length() - prefix - suffix, source.substring(prefix, source.length() - suffix)).tokens;
+                }
+                String savedTo = saveTokens(tokens);
+                lastTokens = tokens;
+                System.out.println("Lexing Phase has been Passed! Token stream saved to '" + savedTo + "'");
+                return true;
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                System.out.println("Lexing error occurred. Stopping lexing.");
+                return false;
+            }
+        }
+
+        // Tokens of the last successful Lex call, or null if there was none.
+        public TokenBuffer getTokens() {
+            return lastTokens;
         }
 
-        public void Lex() {
-            Lexer lexer = new Lexer();
+        // Lexes source_code.txt, memory-mapped and in parallel as configured by
+        // setMemoryMapped and setParallel.
+        public boolean Lex() {
             try {
-                String xmlOutput = lexer.tokenizeToXML("source_code.txt");
-                lexer.saveXMLToFile(xmlOutput, "output.xml");
-                System.out.println("Lexing Phase has been Passed! Token stream saved to 'output.xml'");
+                TokenBuffer tokens = tokenizeFile("source_code.txt");
+                String savedTo = saveTokens(tokens);
+                lastTokens = tokens;
+                System.out.println("Lexing Phase has been Passed! Token stream saved to '" + savedTo + "'");
+                return true;
             } catch (IOException | IllegalArgumentException e) {
                 System.err.println(e.getMessage());
                 // Stop the lexing process but don't exit the program
                 System.out.println("Lexing error occurred. Stopping lexing.");
-                return; // Stops further lexing, but allows the program to continue
+                return false; // Stops further lexing, but allows the program to continue
             }
         }
 
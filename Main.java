@@ -3,6 +3,7 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main {
 
@@ -30,6 +31,17 @@ public class Main {
         inputScrollPane.setPreferredSize(new Dimension(480, 400)); 
 
         JButton compileButton = new JButton("Compile");
+        Lexer lexer = new Lexer();
+        // With -Dcompiler.mmap=true each Compile lexes the source_code.txt it
+        // has just written through a memory mapping, instead of the editor
+        // text.
+        boolean memoryMapped = Boolean.getBoolean("compiler.mmap");
+        lexer.setMemoryMapped(memoryMapped);
+        // -Dcompiler.parallel=true lexes large programs in chunks on the
+        // common pool.
+        if (Boolean.getBoolean("compiler.parallel")) {
+            lexer.setParallel(ForkJoinPool.commonPool());
+        }
 
         compileButton.addActionListener(new ActionListener() {
             @Override
@@ -42,16 +54,21 @@ public class Main {
                     writer.write(userInput);
                     writer.close();
 
-                    Lexer lexer = new Lexer();
-                    lexer.Lex();
+                    if (!(memoryMapped ? lexer.Lex() : lexer.Lex(userInput))) {
+                        return;
+                    }
 
                     SLRParser parser = new SLRParser();
-                    parser.SLRParsing();
-                    Parser parserSynTree = new Parser();
-                    parserSynTree.parse();
+                    if (!parser.SLRParsing(lexer.getTokens())) {
+                        return;
+                    }
 
                     ScopeAnalyzer analyzer = new ScopeAnalyzer();
-                    analyzer.scopeAndTypeCheck();
+                    if (ScopeAnalyzer.XML_INPUT) {
+                        analyzer.scopeAndTypeCheck();
+                    } else {
+                        analyzer.scopeAndTypeCheck(parser.getSyntaxTree());
+                    }
 
                 } catch (Exception ex) {
                     System.err.println("Error during compilation: " + ex.getMessage());
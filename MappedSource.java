@@ -0,0 +1,52 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Source text read straight out of a memory-mapped file. The language is pure
+// ASCII, so every byte is one character and no decoding step or char[] copy is
+// needed; a byte outside ASCII simply fails to match any token.
+class MappedSource implements CharSequence {
+
+    private final ByteBuffer bytes;
+
+    MappedSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    static MappedSource map(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Source file is too large to map: " + filePath);
+            }
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        ByteBuffer slice = bytes.duplicate();
+        slice.position(start).limit(end);
+        return new MappedSource(slice.slice());
+    }
+
+    @Override
+    public String toString() {
+        byte[] text = new byte[bytes.limit()];
+        bytes.duplicate().get(text);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -1,32 +1,78 @@
-import java.util.ArrayList;           
-import java.util.List;              
+// A node of a SyntaxTree: the tree plus an index into it. Nodes are made on
+// demand and carry no state of their own, so the phases can hand them around
+// while the tree itself stays in the SyntaxTree arrays.
+class Node {
+    final SyntaxTree tree;
+    final int index;
 
+    Node(SyntaxTree tree, int index) {
+        this.tree = tree;
+        this.index = index;
+    }
 
-class Node {
-    String symb;
-    String unid;
-    List<Node> children;
-    Node parent;  // Reference to the parent node
+    String symb() {
+        return tree.symb(index);
+    }
+
+    NodeKind kind() {
+        return tree.kind(index);
+    }
+
+    // The source word of a terminal, null for a non-terminal.
+    String word() {
+        return tree.word(index);
+    }
+
+    // The Identifiers id of a V or F terminal, -1 for any other node.
+    int identifier() {
+        return tree.identifier(index);
+    }
+
+    int unid() {
+        return index;
+    }
+
+    boolean isTerminal() {
+        return tree.isTerminal(index);
+    }
+
+    // The parent node, or null for the root.
+    Node parent() {
+        int parent = tree.parent(index);
+        return parent < 0 ? null : new Node(tree, parent);
+    }
+
+    int childCount() {
+        return tree.childCount(index);
+    }
+
+    boolean isLeaf() {
+        return tree.firstChild(index) < 0;
+    }
+
+    Node child(int position) {
+        return new Node(tree, tree.child(index, position));
+    }
 
-    // Constructor with parent node
-    Node(String symb, String unid) {
-        this.symb = symb;
-        this.unid = unid;
-        this.children = new ArrayList<>();
-        this.parent = null;  // Initialize parent as null
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Node && ((Node) other).tree == tree && ((Node) other).index == index;
     }
 
-    // Method to add a child and set its parent
-    void addChild(Node child) {
-        child.parent = this;  // Set this node as the parent of the child
-        this.children.add(child);
+    @Override
+    public int hashCode() {
+        return index;
     }
 
     // Print the tree structure for debugging
     void printNode(String indent) {
-        System.out.println(indent + "Symbol: " + symb + ", UNID: " + unid);
-        for (Node child : children) {
-            child.printNode(indent + "  ");
+        int end = tree.subtreeEnd(index);
+        int[] depths = new int[end - index];
+        for (int node = index; node < end; node++) {
+            if (node > index) {
+                depths[node - index] = depths[tree.parent(node) - index] + 1;
+            }
+            System.out.println(indent + "  ".repeat(depths[node - index]) + "Symbol: " + tree.symb(node) + ", UNID: " + node);
         }
     }
 }
@@ -0,0 +1,58 @@
+// Every Grammar symbol as an enum constant, in symbol id order, so the kind
+// of a tree node is an array lookup on its symbol id and the phases can
+// switch on it instead of comparing symbol names. The word of a name or a
+// constant is kept apart from its kind: a node of kind V says it is a
+// variable name, and Node.word() says which one.
+enum NodeKind {
+    // Terminals, in the column order of p8.csv
+    MAIN("main"), COMMA(","), NUM("num"), TEXT("text"), V("V"), BEGIN("begin"), END("end"),
+    SEMICOLON(";"), SKIP("skip"), HALT("halt"), PRINT("print"), RETURN("return"), N("N"), T("T"),
+    LESS("<"), INPUT("input"), EQUAL("="), LPAREN("("), RPAREN(")"), IF("if"), THEN("then"),
+    ELSE("else"), NOT("not"), SQRT("sqrt"), OR("or"), AND("and"), EQ("eq"), GRT("grt"), ADD("add"),
+    SUB("sub"), MUL("mul"), DIV("div"), F("F"), VOID("void"), LBRACE("{"), RBRACE("}"), EOF("$"),
+
+    // Non-terminals
+    PROG("PROG"), GLOBVARS("GLOBVARS"), VTYP("VTYP"), VNAME("VNAME"), ALGO("ALGO"),
+    INSTRUC("INSTRUC"), COMMAND("COMMAND"), ATOMIC("ATOMIC"), CONST("CONST"), ASSIGN("ASSIGN"),
+    CALL("CALL"), BRANCH("BRANCH"), TERM("TERM"), OP("OP"), ARG("ARG"), COND("COND"),
+    SIMPLE("SIMPLE"), COMPOSIT("COMPOSIT"), UNOP("UNOP"), BINOP("BINOP"), FNAME("FNAME"),
+    FUNCTIONS("FUNCTIONS"), DECL("DECL"), HEADER("HEADER"), FTYP("FTYP"), BODY("BODY"),
+    PROLOG("PROLOG"), EPILOG("EPILOG"), LOCVARS("LOCVARS"), SUBFUNCS("SUBFUNCS");
+
+    private static final NodeKind[] BY_SYMBOL = values();
+
+    // The ordinals are the Grammar symbol ids, so the two lists have to stay
+    // in step.
+    static {
+        if (BY_SYMBOL.length != Grammar.TERMINAL_COUNT + Grammar.NONTERMINAL_COUNT) {
+            throw new IllegalStateException("NodeKind has " + BY_SYMBOL.length + " constants for "
+                + (Grammar.TERMINAL_COUNT + Grammar.NONTERMINAL_COUNT) + " grammar symbols");
+        }
+        for (NodeKind kind : BY_SYMBOL) {
+            if (!kind.symbolName.equals(Grammar.symbolName(kind.ordinal()))) {
+                throw new IllegalStateException("NodeKind " + kind + " is not grammar symbol "
+                    + Grammar.symbolName(kind.ordinal()));
+            }
+        }
+    }
+
+    // The name the symbol has in Grammar, which is also the word of a
+    // keyword terminal.
+    final String symbolName;
+
+    NodeKind(String symbolName) {
+        this.symbolName = symbolName;
+    }
+
+    static NodeKind of(int symbol) {
+        return BY_SYMBOL[symbol];
+    }
+
+    int symbol() {
+        return ordinal();
+    }
+
+    boolean isTerminal() {
+        return Grammar.isTerminal(ordinal());
+    }
+}
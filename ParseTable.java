@@ -0,0 +1,331 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Compiled SLR ACTION and GOTO tables, indexed by state and Grammar symbol
+// ids. A table never changes once built, so one instance is shared by every
+// parser in the JVM.
+//
+// ACTION cells pack the kind of action into the low two bits and its argument
+// (target state or production index) into the rest; 0 is error. GOTO cells
+// hold the target state, or -1 when there is none.
+//
+// Rows are stored with row displacement (comb) compression: the explicit
+// cells of every row are laid into one shared next/check array at an offset
+// chosen so that no two rows collide, and check records which row owns each
+// slot. Each ACTION row also has a default: its most common reduction, which
+// stands in for every cell the row does not store. A default reduction can
+// only postpone an error until after some reductions, never accept input
+// the full table would reject.
+//
+// The shared table comes from the parse_table.bin resource written by
+// SLRGenerator, or is generated from Grammar when the resource is missing.
+final class ParseTable {
+
+    static final int ERROR = 0;
+    static final int SHIFT = 1;
+    static final int REDUCE = 2;
+    static final int ACCEPT = 3;
+
+    static final String RESOURCE = "parse_table.bin";
+    static final ParseTable EMPTY = compress(0, new int[0], new int[0]);
+
+    private final int stateCount;
+    private final int[] actionDefaults;
+    private final Comb actions;
+    private final Comb gotos;
+
+    private static class Comb {
+        final int[] base;
+        final int[] next;
+        final int[] check;
+
+        Comb(int[] base, int[] next, int[] check) {
+            this.base = base;
+            this.next = next;
+            this.check = check;
+        }
+
+        // Rows with the most explicit cells are placed first, each at the
+        // lowest offset where all of its cells land on free slots. The arrays
+        // are padded by a full row so lookups need no bounds check.
+        static Comb pack(int rows, int columns, int[] dense, int[] defaults) {
+            Integer[] order = new Integer[rows];
+            int[] counts = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                order[row] = row;
+                for (int column = 0; column < columns; column++) {
+                    if (dense[row * columns + column] != defaults[row]) {
+                        counts[row]++;
+                    }
+                }
+            }
+            Arrays.sort(order, (a, b) -> counts[b] - counts[a]);
+
+            int[] base = new int[rows];
+            int[] next = new int[columns];
+            int[] check = new int[columns];
+            Arrays.fill(check, -1);
+            int used = 0;
+            for (int row : order) {
+                if (counts[row] == 0) {
+                    continue;
+                }
+                int offset = 0;
+                while (!fits(row, offset, columns, dense, defaults, check)) {
+                    offset++;
+                }
+                if (offset + columns > next.length) {
+                    int size = Math.max(next.length * 2, offset + columns);
+                    next = Arrays.copyOf(next, size);
+                    int oldSize = check.length;
+                    check = Arrays.copyOf(check, size);
+                    Arrays.fill(check, oldSize, size, -1);
+                }
+                for (int column = 0; column < columns; column++) {
+                    int cell = dense[row * columns + column];
+                    if (cell != defaults[row]) {
+                        next[offset + column] = cell;
+                        check[offset + column] = row;
+                    }
+                }
+                base[row] = offset;
+                used = Math.max(used, offset + columns);
+            }
+            used = Math.max(used, columns);
+            return new Comb(base, Arrays.copyOf(next, used), Arrays.copyOf(check, used));
+        }
+
+        private static boolean fits(int row, int offset, int columns, int[] dense, int[] defaults, int[] check) {
+            for (int column = 0; column < columns; column++) {
+                int slot = offset + column;
+                if (slot < check.length && check[slot] >= 0 && dense[row * columns + column] != defaults[row]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private ParseTable(int stateCount, int[] actionDefaults, Comb actions, Comb gotos) {
+        this.stateCount = stateCount;
+        this.actionDefaults = actionDefaults;
+        this.actions = actions;
+        this.gotos = gotos;
+    }
+
+    private static class Shared {
+        static final ParseTable TABLE = loadShared();
+    }
+
+    static ParseTable shared() {
+        return Shared.TABLE;
+    }
+
+    int stateCount() {
+        return stateCount;
+    }
+
+    int action(int state, int terminal) {
+        if (state >= stateCount) {
+            return ERROR;
+        }
+        int slot = actions.base[state] + terminal;
+        return actions.check[slot] == state ? actions.next[slot] : actionDefaults[state];
+    }
+
+    int gotoState(int state, int nonterminal) {
+        if (state >= stateCount) {
+            return -1;
+        }
+        int slot = gotos.base[state] + nonterminal;
+        return gotos.check[slot] == state ? gotos.next[slot] : -1;
+    }
+
+    String describeSize() {
+        int dense = stateCount * (Grammar.TERMINAL_COUNT + Grammar.NONTERMINAL_COUNT);
+        int packed = actions.next.length + gotos.next.length;
+        return dense + " dense cells packed into " + packed + " slots";
+    }
+
+    // Builds the compressed form of dense state-major ACTION and GOTO arrays.
+    static ParseTable compress(int stateCount, int[] actions, int[] gotos) {
+        int[] actionDefaults = new int[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            actionDefaults[state] = mostCommonReduction(actions, state);
+        }
+        int[] gotoDefaults = new int[stateCount];
+        Arrays.fill(gotoDefaults, -1);
+        return new ParseTable(stateCount, actionDefaults,
+            Comb.pack(stateCount, Grammar.TERMINAL_COUNT, actions, actionDefaults),
+            Comb.pack(stateCount, Grammar.NONTERMINAL_COUNT, gotos, gotoDefaults));
+    }
+
+    private static int mostCommonReduction(int[] actions, int state) {
+        int best = ERROR;
+        int bestCount = 0;
+        for (int i = 0; i < Grammar.TERMINAL_COUNT; i++) {
+            int action = actions[state * Grammar.TERMINAL_COUNT + i];
+            if ((action & 3) != REDUCE) {
+                continue;
+            }
+            int count = 0;
+            for (int j = 0; j < Grammar.TERMINAL_COUNT; j++) {
+                if (actions[state * Grammar.TERMINAL_COUNT + j] == action) {
+                    count++;
+                }
+            }
+            if (count > bestCount) {
+                best = action;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static ParseTable loadShared() {
+        try (InputStream in = ParseTable.class.getResourceAsStream("/" + RESOURCE)) {
+            if (in != null) {
+                return read(in.readAllBytes());
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage() + ", generating the table instead");
+        }
+        return SLRGenerator.generate();
+    }
+
+    static ParseTable fromCsv(String filePath) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
+            String line = br.readLine();
+            if (line == null) {
+                throw new IOException("Empty file");
+            }
+
+            String[] columns = line.split(",", -1);
+            int[] columnTerminals = new int[columns.length];
+            int[] columnNonterminals = new int[columns.length];
+            for (int i = 1; i < columns.length; i++) {
+                String symbol = columns[i];
+                if (symbol.equals("\"")) {
+                    symbol = ",";
+                }
+                columnTerminals[i] = Grammar.terminal(symbol);
+                columnNonterminals[i] = Grammar.nonterminal(symbol);
+            }
+
+            List<String[]> rows = new ArrayList<>();
+            int stateCount = 0;
+            while ((line = br.readLine()) != null) {
+                String[] row = line.split(",", -1);
+                rows.add(row);
+                stateCount = Math.max(stateCount, Integer.parseInt(row[0]) + 1);
+            }
+
+            int[] actions = new int[stateCount * Grammar.TERMINAL_COUNT];
+            int[] gotos = new int[stateCount * Grammar.NONTERMINAL_COUNT];
+            Arrays.fill(gotos, -1);
+
+            for (String[] row : rows) {
+                int state = Integer.parseInt(row[0]);
+                for (int i = 1; i < columns.length && i < row.length; i++) {
+                    if (row[i].isEmpty()) {
+                        continue;
+                    }
+                    if (columnNonterminals[i] >= 0) {
+                        gotos[state * Grammar.NONTERMINAL_COUNT + columnNonterminals[i]] = Integer.parseInt(row[i]);
+                    } else if (columnTerminals[i] >= 0) {
+                        actions[state * Grammar.TERMINAL_COUNT + columnTerminals[i]] = encodeAction(row[i], state);
+                    }
+                }
+            }
+            return compress(stateCount, actions, gotos);
+        }
+    }
+
+    private static int encodeAction(String action, int state) {
+        if (action.startsWith("s")) {
+            return Integer.parseInt(action.substring(1)) << 2 | SHIFT;
+        } else if (action.startsWith("r")) {
+            return Integer.parseInt(action.substring(1)) << 2 | REDUCE;
+        } else if (action.equals("acc")) {
+            return ACCEPT;
+        }
+        System.out.println("Error: Invalid action " + action + " in state " + state);
+        return ERROR;
+    }
+
+    // The symbol names go first so a snapshot taken against a different
+    // Grammar is rejected instead of being read with shifted ids. Check
+    // entries and GOTO targets are stored one higher so that -1 becomes a one
+    // byte zero.
+    void write(String filePath) throws IOException {
+        try (BinaryFormat.Writer out = new BinaryFormat.Writer(filePath, BinaryFormat.PARSE_TABLE)) {
+            out.writeInt(Grammar.TERMINAL_COUNT);
+            for (String terminal : Grammar.TERMINALS) {
+                out.writeString(terminal);
+            }
+            out.writeInt(Grammar.NONTERMINAL_COUNT);
+            for (String nonterminal : Grammar.NONTERMINALS) {
+                out.writeString(nonterminal);
+            }
+            out.writeInt(stateCount);
+            for (int action : actionDefaults) {
+                out.writeInt(action);
+            }
+            writeComb(out, actions, 0);
+            writeComb(out, gotos, 1);
+        }
+    }
+
+    private void writeComb(BinaryFormat.Writer out, Comb comb, int nextBias) throws IOException {
+        for (int base : comb.base) {
+            out.writeInt(base);
+        }
+        out.writeInt(comb.next.length);
+        for (int i = 0; i < comb.next.length; i++) {
+            out.writeInt(comb.next[i] + nextBias);
+            out.writeInt(comb.check[i] + 1);
+        }
+    }
+
+    static ParseTable read(byte[] data) throws IOException {
+        BinaryFormat.Reader in = new BinaryFormat.Reader(data, RESOURCE, BinaryFormat.PARSE_TABLE);
+        if (!Arrays.equals(readNames(in), Grammar.TERMINALS) || !Arrays.equals(readNames(in), Grammar.NONTERMINALS)) {
+            throw new IOException(RESOURCE + " was built for a different grammar");
+        }
+        int stateCount = in.readInt();
+        int[] actionDefaults = new int[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            actionDefaults[i] = in.readInt();
+        }
+        Comb actions = readComb(in, stateCount, 0);
+        Comb gotos = readComb(in, stateCount, 1);
+        return new ParseTable(stateCount, actionDefaults, actions, gotos);
+    }
+
+    private static Comb readComb(BinaryFormat.Reader in, int stateCount, int nextBias) {
+        int[] base = new int[stateCount];
+        for (int i = 0; i < stateCount; i++) {
+            base[i] = in.readInt();
+        }
+        int[] next = new int[in.readInt()];
+        int[] check = new int[next.length];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = in.readInt() - nextBias;
+            check[i] = in.readInt() - 1;
+        }
+        return new Comb(base, next, check);
+    }
+
+    private static String[] readNames(BinaryFormat.Reader in) {
+        String[] names = new String[in.readInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = in.readString();
+        }
+        return names;
+    }
+}
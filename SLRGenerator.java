@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+// Builds the SLR(1) parse table straight from the productions in Grammar:
+// the canonical collection of LR(0) item sets, FIRST and FOLLOW sets, then
+// ACTION and GOTO. Running it is the build step for the parse_table.bin
+// resource:
+//
+//   java SLRGenerator [parse_table.bin]
+//
+// An item is encoded as production * ITEM_STRIDE + dot position. The
+// augmented production PROG' ::= PROG gets index Grammar.PRODUCTION_COUNT.
+class SLRGenerator {
+
+    private static final int AUGMENTED = Grammar.PRODUCTION_COUNT;
+    private static final int ITEM_STRIDE = 16;
+    private static final int SYMBOL_COUNT = Grammar.TERMINAL_COUNT + Grammar.NONTERMINAL_COUNT;
+
+    private final List<int[]> states = new ArrayList<>();
+    private final List<int[]> transitions = new ArrayList<>();
+    private final HashMap<String, Integer> stateIds = new HashMap<>();
+    private final BitSet nullable = new BitSet();
+    private final BitSet[] first = new BitSet[Grammar.NONTERMINAL_COUNT];
+    private final BitSet[] follow = new BitSet[Grammar.NONTERMINAL_COUNT];
+
+    static ParseTable generate() {
+        return new SLRGenerator().build();
+    }
+
+    private ParseTable build() {
+        buildItemSets();
+        buildFirstSets();
+        buildFollowSets();
+
+        int stateCount = states.size();
+        int[] actions = new int[stateCount * Grammar.TERMINAL_COUNT];
+        int[] gotos = new int[stateCount * Grammar.NONTERMINAL_COUNT];
+        Arrays.fill(gotos, -1);
+        List<String> conflicts = new ArrayList<>();
+
+        for (int state = 0; state < stateCount; state++) {
+            int[] targets = transitions.get(state);
+            for (int symbol = 0; symbol < SYMBOL_COUNT; symbol++) {
+                if (targets[symbol] < 0) {
+                    continue;
+                }
+                if (Grammar.isTerminal(symbol)) {
+                    actions[state * Grammar.TERMINAL_COUNT + symbol] = targets[symbol] << 2 | ParseTable.SHIFT;
+                } else {
+                    gotos[state * Grammar.NONTERMINAL_COUNT + symbol - Grammar.TERMINAL_COUNT] = targets[symbol];
+                }
+            }
+
+            for (int item : states.get(state)) {
+                int production = item / ITEM_STRIDE;
+                if (item % ITEM_STRIDE < rhs(production).length) {
+                    continue;
+                }
+                if (production == AUGMENTED) {
+                    setAction(actions, state, Grammar.END, ParseTable.ACCEPT, conflicts);
+                    continue;
+                }
+                BitSet lookahead = follow[Grammar.LHS[production]];
+                for (int terminal = lookahead.nextSetBit(0); terminal >= 0; terminal = lookahead.nextSetBit(terminal + 1)) {
+                    setAction(actions, state, terminal, production << 2 | ParseTable.REDUCE, conflicts);
+                }
+            }
+        }
+
+        if (!conflicts.isEmpty()) {
+            throw new IllegalStateException("Grammar is not SLR(1):\n" + String.join("\n", conflicts));
+        }
+        return ParseTable.compress(stateCount, actions, gotos);
+    }
+
+    private static void setAction(int[] actions, int state, int terminal, int action, List<String> conflicts) {
+        int cell = state * Grammar.TERMINAL_COUNT + terminal;
+        if (actions[cell] != ParseTable.ERROR && actions[cell] != action) {
+            conflicts.add("state " + state + " on '" + Grammar.TERMINALS[terminal] + "': "
+                + describe(actions[cell]) + " / " + describe(action));
+            return;
+        }
+        actions[cell] = action;
+    }
+
+    private static String describe(int action) {
+        switch (action & 3) {
+            case ParseTable.SHIFT: return "shift " + (action >>> 2);
+            case ParseTable.REDUCE: return "reduce " + Grammar.production(action >>> 2);
+            default: return "accept";
+        }
+    }
+
+    private static int[] rhs(int production) {
+        return production == AUGMENTED ? new int[] {Grammar.TERMINAL_COUNT} : Grammar.RHS[production];
+    }
+
+    // States are numbered in the order they are discovered, starting from the
+    // closure of PROG' ::= . PROG, and each state's successors are explored
+    // in symbol id order, so the numbering is stable for a given grammar.
+    private void buildItemSets() {
+        stateFor(new int[] {AUGMENTED * ITEM_STRIDE});
+        for (int state = 0; state < states.size(); state++) {
+            int[] items = states.get(state);
+            int[] targets = new int[SYMBOL_COUNT];
+            Arrays.fill(targets, -1);
+            for (int symbol = 0; symbol < SYMBOL_COUNT; symbol++) {
+                TreeSet<Integer> kernel = new TreeSet<>();
+                for (int item : items) {
+                    int[] rhs = rhs(item / ITEM_STRIDE);
+                    int dot = item % ITEM_STRIDE;
+                    if (dot < rhs.length && rhs[dot] == symbol) {
+                        kernel.add(item + 1);
+                    }
+                }
+                if (!kernel.isEmpty()) {
+                    targets[symbol] = stateFor(kernel.stream().mapToInt(Integer::intValue).toArray());
+                }
+            }
+            transitions.add(targets);
+        }
+    }
+
+    private int stateFor(int[] kernel) {
+        String key = Arrays.toString(kernel);
+        Integer id = stateIds.get(key);
+        if (id == null) {
+            id = states.size();
+            stateIds.put(key, id);
+            states.add(closure(kernel));
+        }
+        return id;
+    }
+
+    private static int[] closure(int[] kernel) {
+        TreeSet<Integer> items = new TreeSet<>();
+        ArrayList<Integer> work = new ArrayList<>();
+        for (int item : kernel) {
+            items.add(item);
+            work.add(item);
+        }
+        while (!work.isEmpty()) {
+            int item = work.remove(work.size() - 1);
+            int[] rhs = rhs(item / ITEM_STRIDE);
+            int dot = item % ITEM_STRIDE;
+            if (dot == rhs.length || Grammar.isTerminal(rhs[dot])) {
+                continue;
+            }
+            int nonterminal = rhs[dot] - Grammar.TERMINAL_COUNT;
+            for (int production = 0; production < Grammar.PRODUCTION_COUNT; production++) {
+                if (Grammar.LHS[production] == nonterminal && items.add(production * ITEM_STRIDE)) {
+                    work.add(production * ITEM_STRIDE);
+                }
+            }
+        }
+        return items.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void buildFirstSets() {
+        for (int i = 0; i < Grammar.NONTERMINAL_COUNT; i++) {
+            first[i] = new BitSet();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int production = 0; production < Grammar.PRODUCTION_COUNT; production++) {
+                int lhs = Grammar.LHS[production];
+                int before = first[lhs].cardinality();
+                boolean allNullable = addFirst(first[lhs], Grammar.RHS[production], 0);
+                if (allNullable && !nullable.get(lhs)) {
+                    nullable.set(lhs);
+                    changed = true;
+                }
+                changed |= first[lhs].cardinality() != before;
+            }
+        }
+    }
+
+    // Adds FIRST of symbols[from..] to target and returns whether that whole
+    // suffix can derive the empty string.
+    private boolean addFirst(BitSet target, int[] symbols, int from) {
+        for (int i = from; i < symbols.length; i++) {
+            int symbol = symbols[i];
+            if (Grammar.isTerminal(symbol)) {
+                target.set(symbol);
+                return false;
+            }
+            target.or(first[symbol - Grammar.TERMINAL_COUNT]);
+            if (!nullable.get(symbol - Grammar.TERMINAL_COUNT)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void buildFollowSets() {
+        for (int i = 0; i < Grammar.NONTERMINAL_COUNT; i++) {
+            follow[i] = new BitSet();
+        }
+        follow[Grammar.LHS[0]].set(Grammar.END);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int production = 0; production < Grammar.PRODUCTION_COUNT; production++) {
+                int[] rhs = Grammar.RHS[production];
+                for (int i = 0; i < rhs.length; i++) {
+                    if (Grammar.isTerminal(rhs[i])) {
+                        continue;
+                    }
+                    BitSet target = follow[rhs[i] - Grammar.TERMINAL_COUNT];
+                    int before = target.cardinality();
+                    if (addFirst(target, rhs, i + 1)) {
+                        target.or(follow[Grammar.LHS[production]]);
+                    }
+                    changed |= target.cardinality() != before;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String outputPath = args.length > 0 ? args[0] : ParseTable.RESOURCE;
+        long start = System.nanoTime();
+        ParseTable table = generate();
+        long elapsed = System.nanoTime() - start;
+        table.write(outputPath);
+        System.out.println("Generated " + table.stateCount() + " states in " + elapsed / 1000000 + " ms: "
+            + table.describeSize() + ". Written to " + outputPath);
+    }
+}
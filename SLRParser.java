@@ -1,10 +1,7 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.DocumentBuilder;
 import org.w3c.dom.Document;
@@ -14,192 +11,226 @@ import java.io.File;
 
 public class SLRParser {
 
-    private LinkedHashMap<String, String> parseTable = new LinkedHashMap<>();
-    private Stack<Integer> stateStack = new Stack<>();
-    private Stack<String> symbolStack = new Stack<>();
+    private static final int LESS_THAN = Grammar.terminal("<");
+    private static final int INPUT = Grammar.terminal("input");
+    private static final int INSTRUC = Grammar.nonterminal("INSTRUC");
 
-    public void loadParseTable(String filePath) {
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line = br.readLine();
-            if (line == null) {
-                throw new IOException("Empty file");
-            }
-    
-            String[] tokens = line.split(",", -1);
-    
-            while ((line = br.readLine()) != null) {
-                String[] row = line.split(",", -1);
-                String state = row[0];
-    
+    // Terminal id of each TokenType, and whether the type is one of the
+    // V, F, T and N classes whose words are kept in the tree.
+    private static final int[] TOKEN_TERMINALS = new int[TokenType.values().length];
+    private static final boolean[] CLASS_TERMINALS = new boolean[TokenType.values().length];
 
-                for (int i = 1; i < tokens.length && i < row.length; i++) {
-                    if (!row[i].isEmpty()) {
-                        String token = tokens[i];
-                        
+    static {
+        for (TokenType type : TokenType.values()) {
+            String keyword = Lexer.keywordText(type);
+            TOKEN_TERMINALS[type.ordinal()] = keyword != null ? Grammar.terminal(keyword) : -1;
+        }
+        TOKEN_TERMINALS[TokenType.V_NAMES.ordinal()] = Grammar.terminal("V");
+        TOKEN_TERMINALS[TokenType.F_NAMES.ordinal()] = Grammar.terminal("F");
+        TOKEN_TERMINALS[TokenType.TEXT_SNIPPET.ordinal()] = Grammar.terminal("T");
+        TOKEN_TERMINALS[TokenType.N_NUMBERS.ordinal()] = Grammar.terminal("N");
+        CLASS_TERMINALS[TokenType.V_NAMES.ordinal()] = true;
+        CLASS_TERMINALS[TokenType.F_NAMES.ordinal()] = true;
+        CLASS_TERMINALS[TokenType.TEXT_SNIPPET.ordinal()] = true;
+        CLASS_TERMINALS[TokenType.N_NUMBERS.ordinal()] = true;
+    }
 
-                        if (token.equals("\"")) {
-                            token = ",";
-                        }
-    
-                        String key = state + "," + token; 
-                        String action = row[i];
-                        parseTable.put(key, action);
-                    }
-                }
-            }
-    
+    private ParseTable table = ParseTable.shared();
+
+    // The parse stack: states[0] is the start state and nodes[k], when the
+    // tree is being built, holds the builder index of the subtree for the
+    // symbol that led to states[k]. Both grow together and are reused across
+    // parses.
+    private int[] states = new int[64];
+    private int[] nodes;
+    private int depth;
+    private SyntaxTree.Builder tree;
+    private SyntaxTree syntaxTree;
+
+    // The input as terminal ids, and the words behind them when a tree is
+    // built. Like the stacks they are reused across parses.
+    private int[] terminals = new int[64];
+    private String[] words = new String[64];
+
+    // Replaces the shared table with one compiled from the given CSV file.
+    public void loadParseTable(String filePath) {
+        try {
+            table = ParseTable.fromCsv(filePath);
         } catch (IOException e) {
             e.printStackTrace();
+            table = ParseTable.EMPTY;
         }
     }
 
 public void parseInput(String input) {
-    stateStack.push(0);  
-    String[] tokens = input.split("\\s+"); 
+    parse(input.split("\\s+"), null);
+}
 
-    int i = 0; 
-    while (i <= tokens.length) {
-        if (stateStack.isEmpty()) {
-            System.out.println("Error: State stack is empty, cannot proceed.");
-            return;
-        }
+private boolean parse(String[] tokens, String[] words) {
+    ensureInputCapacity(tokens.length + 1);
+    for (int t = 0; t < tokens.length; t++) {
+        terminals[t] = Grammar.terminal(tokens[t]);
+    }
+    terminals[tokens.length] = Grammar.END;
+    return parse(terminals, tokens.length, words, tokens);
+}
 
-        int currentState = stateStack.peek();  
-        String currentToken = (i < tokens.length) ? tokens[i] : "$"; 
+// Parses the lexer's tokens and builds the syntax tree.
+boolean parse(TokenBuffer tokens) {
+    int count = readTerminals(tokens, true);
+    return parse(terminals, count, words, null);
+}
 
-        String action = parseTable.get(currentState + "," + currentToken);
+// Checks the tokens against the grammar without building a tree. Once the
+// input arrays and the stack have grown to fit, this allocates nothing.
+boolean recognize(TokenBuffer tokens) {
+    int count = readTerminals(tokens, false);
+    return parse(terminals, count, null, null);
+}
 
-        if (action == null) {
-            System.out.println("Error: No valid action for state " + currentState + " and token " + currentToken);
-            return;
+// Maps the lexer's tokens straight to terminal ids: V, F, T and N tokens
+// become their class and keywords their own terminal, with "< input" split
+// into "<" and "input" the way the grammar spells it. Fills terminals, and
+// words if withWords is set, and returns the number of terminals before END.
+private int readTerminals(TokenBuffer tokens, boolean withWords) {
+    ensureInputCapacity(tokens.size() * 2 + 1);
+    int count = 0;
+    for (int t = 0; t < tokens.size(); t++) {
+        int type = tokens.typeCode(t);
+        int terminal = TOKEN_TERMINALS[type];
+        if (type == TokenType.INPUT.ordinal()) {
+            if (withWords) {
+                words[count] = Grammar.TERMINALS[LESS_THAN];
+                words[count + 1] = Grammar.TERMINALS[INPUT];
+            }
+            terminals[count++] = LESS_THAN;
+            terminals[count++] = INPUT;
+        } else {
+            if (withWords) {
+                words[count] = CLASS_TERMINALS[type] ? tokens.text(t) : Grammar.TERMINALS[terminal];
+            }
+            terminals[count++] = terminal;
         }
+    }
+    terminals[count] = Grammar.END;
+    return count;
+}
 
-        if (action.startsWith("s")) {
-            int newState = Integer.parseInt(action.substring(1)); 
-            stateStack.push(newState);  
-            symbolStack.push(currentToken); 
-            i++; 
-        } else if (action.startsWith("r")) {
+private void ensureInputCapacity(int capacity) {
+    if (terminals.length < capacity) {
+        terminals = new int[Math.max(capacity, terminals.length * 2)];
+        words = new String[terminals.length];
+    }
+}
 
-            int productionIndex = Integer.parseInt(action.substring(1)); 
-            String production = getProduction(productionIndex);
+// Runs the parser over terminals[0, count), which must be followed by END.
+// When the words behind them are passed too, the syntax tree is built on the
+// node stack as the input is reduced and is kept in syntaxTree once the input
+// is accepted. Apart from the tree nodes themselves nothing is allocated per
+// shift or reduce. tokens only names terminals the grammar does not know.
+private boolean parse(int[] terminals, int count, String[] words, String[] tokens) {
+    boolean buildTree = words != null;
+    if (buildTree) {
+        if (nodes == null || nodes.length < states.length) {
+            nodes = new int[states.length];
+        }
+        tree = new SyntaxTree.Builder();
+    }
+    depth = 0;
+    states[depth++] = 0;
 
+    int i = 0; 
+    while (i <= count) {
+        if (depth == 0) {
+            System.out.println("Error: State stack is empty, cannot proceed.");
+            return false;
+        }
 
-            int popCount = getPopCount(production);
-            if (stateStack.size() < popCount || symbolStack.size() < popCount) {
-                System.out.println("Error: Stack underflow during reduction. State or symbol stack is too small.");
-                return;
-            }
+        int currentState = states[depth - 1];  
+        int terminal = terminals[i];
+        int action = terminal >= 0 ? table.action(currentState, terminal) : ParseTable.ERROR;
 
-            for (int j = 0; j < popCount; j++) {
-                stateStack.pop();
-                symbolStack.pop();
-            }
+        switch (action & 3) {
+            case ParseTable.SHIFT:
+                if (depth == states.length) {
+                    grow(buildTree);
+                }
+                if (buildTree) {
+                    nodes[depth] = tree.addTerminal(terminal, (i < count) ? words[i] : "$");
+                }
+                states[depth++] = action >>> 2;  
+                i++; 
+                break;
+            case ParseTable.REDUCE: {
+                int productionIndex = action >>> 2; 
+                int popCount = Grammar.RHS_LENGTH[productionIndex];
+                if (depth - 1 < popCount) {
+                    System.out.println("Error: Stack underflow during reduction. State or symbol stack is too small.");
+                    return false;
+                }
+
+                depth -= popCount;
+                int node = buildTree ? buildNode(productionIndex, depth) : -1;
 
-            String lhs = production.split("::=")[0].trim();  
-            currentState = stateStack.peek(); 
-            String gotoStateKey = currentState  + "," + lhs; 
-            String gotoState = parseTable.get(gotoStateKey);
-
-            if (gotoState != null) {
-                stateStack.push(Integer.parseInt(gotoState));
-                symbolStack.push(lhs);
-            } else {
-                System.out.println("Error: No valid goto for state " + currentState + " and non-terminal " + lhs);
-                return;
+                int lhs = Grammar.LHS[productionIndex];
+                currentState = states[depth - 1]; 
+                int gotoState = table.gotoState(currentState, lhs);
+
+                if (gotoState >= 0) {
+                    if (depth == states.length) {
+                        grow(buildTree);
+                    }
+                    if (buildTree) {
+                        nodes[depth] = node;
+                    }
+                    states[depth++] = gotoState;
+                } else {
+                    System.out.println("Error: No valid goto for state " + currentState + " and non-terminal " + Grammar.NONTERMINALS[lhs]);
+                    return false;
+                }
+                break;
             }
-        } else if (action.equals("acc")) {
-            System.out.println("Input accepted!");
-            return;
-        } else {
-            System.out.println("Error: Invalid action " + action);
-            return;
+            case ParseTable.ACCEPT:
+                System.out.println("Input accepted!");
+                if (buildTree) {
+                    syntaxTree = tree.build(nodes[depth - 1]);
+                    tree = null;
+                }
+                return true;
+            default:
+                String currentToken = (i == count) ? "$" : (terminal >= 0) ? Grammar.TERMINALS[terminal] : tokens[i]; 
+                System.out.println("Error: No valid action for state " + currentState + " and token " + currentToken);
+                return false;
         }
     }
+    return false;
 }
-    private String getProduction(int index) {
-        switch (index) {
-            case 0: return "PROG ::= main GLOBVARS ALGO FUNCTIONS";
-            case 1: return "GLOBVARS ::= "; // nullable
-            case 2: return "GLOBVARS ::= VTYP VNAME , GLOBVARS";
-            case 3: return "VTYP ::= num";
-            case 4: return "VTYP ::= text";
-            case 5: return "VNAME ::= V";
-            case 6: return "ALGO ::= begin INSTRUC end";
-            case 7: return "INSTRUC ::= "; // nullable
-            case 8: return "INSTRUC ::= COMMAND ; INSTRUC";
-            case 9: return "COMMAND ::= skip";
-            case 10: return "COMMAND ::= halt";
-            case 11: return "COMMAND ::= print ATOMIC";
-            case 12: return "COMMAND ::= ASSIGN";
-            case 13: return "COMMAND ::= CALL";
-            case 14: return "COMMAND ::= BRANCH";
-            case 15: return "COMMAND ::= return ATOMIC";
-            case 16: return "ATOMIC ::= VNAME";
-            case 17: return "ATOMIC ::= CONST";
-            case 18: return "CONST ::= N";
-            case 19: return "CONST ::= T";
-            case 20: return "ASSIGN ::= VNAME < input";
-            case 21: return "ASSIGN ::= VNAME = TERM";
-            case 22: return "CALL ::= FNAME ( ATOMIC , ATOMIC , ATOMIC )";
-            case 23: return "BRANCH ::= if COND then ALGO else ALGO";
-            case 24: return "TERM ::= ATOMIC";
-            case 25: return "TERM ::= CALL";
-            case 26: return "TERM ::= OP";
-            case 27: return "OP ::= UNOP ( ARG )";
-            case 28: return "OP ::= BINOP ( ARG , ARG )";
-            case 29: return "ARG ::= ATOMIC";
-            case 30: return "ARG ::= OP";
-            case 31: return "COND ::= SIMPLE";
-            case 32: return "COND ::= COMPOSIT";
-            case 33: return "SIMPLE ::= BINOP ( ATOMIC , ATOMIC )";
-            case 34: return "COMPOSIT ::= BINOP ( SIMPLE , SIMPLE )";
-            case 35: return "COMPOSIT ::= UNOP ( SIMPLE )";
-            case 36: return "UNOP ::= not";
-            case 37: return "UNOP ::= sqrt";
-            case 38: return "BINOP ::= or";
-            case 39: return "BINOP ::= and";
-            case 40: return "BINOP ::= eq";
-            case 41: return "BINOP ::= grt";
-            case 42: return "BINOP ::= add";
-            case 43: return "BINOP ::= sub";
-            case 44: return "BINOP ::= mul";
-            case 45: return "BINOP ::= div";
-            case 46: return "FNAME ::= F";
-            case 47: return "FUNCTIONS ::= "; // nullable
-            case 48: return "FUNCTIONS ::= DECL FUNCTIONS";
-            case 49: return "DECL ::= HEADER BODY";
-            case 50: return "HEADER ::= FTYP FNAME ( VNAME , VNAME , VNAME )";
-            case 51: return "FTYP ::= num";
-            case 52: return "FTYP ::= void";
-            case 53: return "BODY ::= PROLOG LOCVARS ALGO EPILOG SUBFUNCS end";
-            case 54: return "PROLOG ::= {";
-            case 55: return "EPILOG ::= }";
-            case 56: return "LOCVARS ::= VTYP VNAME , VTYP VNAME , VTYP VNAME ,";
-            case 57: return "SUBFUNCS ::= FUNCTIONS";
-            default: return "";
-        }
-    }
-
 
-    private int getPopCount(String production) {
-        String rhs = production.split("::=")[1].trim(); 
-    
-        if (rhs.equals("")) {
-
-            return 0;
+    private void grow(boolean buildTree) {
+        states = Arrays.copyOf(states, states.length * 2);
+        if (buildTree) {
+            nodes = Arrays.copyOf(nodes, states.length);
         }
+    }
 
-        String[] symbols = rhs.split("\\s+");
-    
-        int popCount = 0;
-        for (String symbol : symbols) {
-            if (!symbol.equals("")) {
-                popCount++;  
+    // Keeps the tree in the shape Parser has always produced: "< input" is a
+    // single terminal node, and the empty INSTRUC that ends an instruction
+    // list is left out.
+    // The right-hand side of the production is nodes[from, from + length).
+    private int buildNode(int production, int from) {
+        int lhs = Grammar.LHS[production];
+        int[] rhs = Grammar.RHS[production];
+        int node = tree.addNonterminal(lhs);
+        for (int i = 0; i < rhs.length; i++) {
+            int child = nodes[from + i];
+            if (rhs[i] == LESS_THAN && i + 1 < rhs.length && rhs[i + 1] == INPUT) {
+                tree.addChild(node, tree.addTerminal(INPUT, "< input"));
+                i++;
+            } else if (!(lhs == INSTRUC && rhs[i] == Grammar.TERMINAL_COUNT + INSTRUC && !tree.hasChildren(child))) {
+                tree.addChild(node, child);
             }
         }
-    
-        return popCount; 
+        return node;
     }
 
     public String parseXMLFile(String xmlFilePath) {
@@ -233,11 +264,69 @@ public void parseInput(String input) {
     }
     
 
-    public void SLRParsing() {
+    public String parseTokenFile(String filePath) {
+        return String.join(" ", readTokenFile(filePath, null));
+    }
+
+    // Reads the lexer's token file as parser terminals: V, F, T and N tokens
+    // become their class, keywords their own word, and "< input" the two
+    // terminals "<" and "input". The words behind the terminals are added to
+    // words when it is not null.
+    private List<String> readTokenFile(String filePath, List<String> words) {
+        List<String> terminals = new ArrayList<>();
+        try {
+            BinaryFormat.Reader in = new BinaryFormat.Reader(filePath, BinaryFormat.TOKENS);
+            while (in.hasMore()) {
+                String tokenClass = in.readString();
+                String word = in.readString();
+
+                if (tokenClass.equals("N") || tokenClass.equals("T") || tokenClass.equals("V") || tokenClass.equals("F")) {
+                    terminals.add(tokenClass);
+                    if (words != null) {
+                        words.add(word);
+                    }
+                } else {
+                    for (String part : word.split(" ")) {
+                        terminals.add(part);
+                        if (words != null) {
+                            words.add(part);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return terminals;
+    }
+
+    // Parses the token file and, when it is accepted, saves the syntax tree
+    // built during the parse. Returns whether the input was accepted.
+    public boolean SLRParsing() {
         SLRParser parser = new SLRParser();
-        parser.loadParseTable("p8.csv");
-        String xmlFilePath = "output.xml";
-        String input = parser.parseXMLFile(xmlFilePath);
-        parser.parseInput(input);
+        List<String> words = new ArrayList<>();
+        List<String> terminals = parser.readTokenFile("tokens.bin", words);
+        if (!parser.parse(terminals.toArray(new String[0]), words.toArray(new String[0]))) {
+            return false;
+        }
+        syntaxTree = parser.syntaxTree;
+        Parser.saveTree(syntaxTree);
+        return true;
+    }
+
+    // Same as SLRParsing(), but takes the tokens the lexer has just produced
+    // instead of reading them back from tokens.bin.
+    public boolean SLRParsing(TokenBuffer tokens) {
+        if (!parse(tokens)) {
+            return false;
+        }
+        Parser.saveTree(syntaxTree);
+        return true;
+    }
+
+    // The tree of the last accepted parse, or null if there was none.
+    SyntaxTree getSyntaxTree() {
+        return syntaxTree;
     }
 }
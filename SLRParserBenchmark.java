@@ -0,0 +1,84 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+// Measures what the SLR driver allocates, with the allocation counter the
+// JVM keeps per thread:
+//
+//   java SLRParserBenchmark [statements]
+//
+// Two generated programs, one twice as long as the other, are recognised
+// many times each. Anything allocated per shift or reduce would make the
+// longer one cost more per parse, so the run fails if it does. The cost of
+// building the tree is printed alongside for comparison.
+class SLRParserBenchmark {
+
+    private static final int WARMUP = 2000;
+    private static final int RUNS = 2000;
+
+    public static void main(String[] args) {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        TokenBuffer small = new Lexer().tokenize(program(statements));
+        TokenBuffer large = new Lexer().tokenize(program(statements * 2));
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        SLRParser parser = new SLRParser();
+        long smallBytes = allocatedPerRecognize(parser, small);
+        long largeBytes = allocatedPerRecognize(parser, large);
+        long treeBytes = allocatedPerTree(parser, large);
+        System.setOut(out);
+
+        double perToken = (double) (largeBytes - smallBytes) / (large.size() - small.size());
+        System.out.println("recognize, " + small.size() + " tokens: " + smallBytes + " bytes per parse");
+        System.out.println("recognize, " + large.size() + " tokens: " + largeBytes + " bytes per parse");
+        System.out.println("recognize: " + perToken + " bytes per extra token");
+        System.out.println("with tree, " + large.size() + " tokens: " + treeBytes + " bytes per parse");
+        if (largeBytes > smallBytes) {
+            System.out.println("FAIL: the driver allocates per shift or reduce");
+            System.exit(1);
+        }
+    }
+
+    private static String program(int statements) {
+        StringBuilder source = new StringBuilder("main num V_a , text V_b ,\nbegin\n");
+        for (int i = 0; i < statements; i++) {
+            source.append("V_a = add(V_a , ").append(i % 97 + 1).append(") ;\n");
+            source.append("if grt(V_a , 100) then begin V_b = \"Big\" ; end else begin skip ; end ;\n");
+        }
+        return source.append("print V_a ;\nend\n").toString();
+    }
+
+    private static long allocatedPerRecognize(SLRParser parser, TokenBuffer tokens) {
+        for (int i = 0; i < WARMUP; i++) {
+            check(parser.recognize(tokens));
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < RUNS; i++) {
+            check(parser.recognize(tokens));
+        }
+        return (allocatedBytes() - before) / RUNS;
+    }
+
+    private static long allocatedPerTree(SLRParser parser, TokenBuffer tokens) {
+        for (int i = 0; i < WARMUP / 10; i++) {
+            check(parser.parse(tokens));
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < RUNS / 10; i++) {
+            check(parser.parse(tokens));
+        }
+        return (allocatedBytes() - before) / (RUNS / 10);
+    }
+
+    private static void check(boolean accepted) {
+        if (!accepted) {
+            throw new IllegalStateException("The benchmark program was rejected");
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
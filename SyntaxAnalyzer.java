@@ -1,7 +1,13 @@
-import org.w3c.dom.*;                
-import javax.xml.parsers.*;           
-import java.io.File;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;           
+import java.util.Arrays;
 import java.util.List;              
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -15,13 +21,22 @@ class ScopeAnalyzer {
 
     class Scope {
         String scopeName;
+        int nameId;
         Scope parentScope;
         List<Scope> childScopes;  
+        // Variables and functions declared directly in this scope, by the
+        // Identifiers id of their name
+        IdMap<SymbolEntry> variables = new IdMap<>();
+        IdMap<FunctionSymbolEntry> functions = new IdMap<>();
+        // The function this scope is the body of
+        FunctionSymbolEntry function;
 
         Scope(String scopeName, Scope parentScope) {
             this.scopeName = scopeName;
+            this.nameId = Identifiers.intern(scopeName);
             this.parentScope = parentScope;
             this.childScopes = new ArrayList<>(); 
+            scopesByName.putIfAbsent(nameId, this);
         }
 
         // Method to add a child scope
@@ -29,6 +44,9 @@ class ScopeAnalyzer {
             this.childScopes.add(childScope);
         }
     }
+    // Every scope by name. Scopes are made in the preorder of the scope tree,
+    // so for a name shared by several functions this holds the first one.
+    private final IdMap<Scope> scopesByName = new IdMap<>();
     public Scope mainScope = new Scope("main", null); 
     public Scope currentScope = mainScope;  
     public String currVarType = "";
@@ -67,9 +85,13 @@ class ScopeAnalyzer {
             symbolTable = new LinkedHashMap<>();
         }
 
-        void addEntry(String entryType, String name, String varOrFuncType, Scope scope, String ID) {
-            SymbolEntry entry = new SymbolEntry(entryType, name, varOrFuncType, scope, ID);
+        // Entries are listed here in declaration order for printing and are
+        // looked up through the table of the scope that declares them.
+        SymbolEntry addEntry(String entryType, int varId, String varOrFuncType, Scope scope, String ID) {
+            SymbolEntry entry = new SymbolEntry(entryType, Identifiers.name(varId) + "@" + scope.scopeName, varOrFuncType, scope, ID);
             symbolTable.put(ID, entry);
+            scope.variables.put(varId, entry);
+            return entry;
         }
 
         void printSymbolTable() {
@@ -86,6 +108,7 @@ class ScopeAnalyzer {
         class FunctionSymbolEntry {
             String functionID;
             String functionName;
+            int nameId;
             String[] parameters;  
             String type;
             Scope scope;
@@ -93,6 +116,7 @@ class ScopeAnalyzer {
             FunctionSymbolEntry(String functionID, String functionName,String type, String[] parameters, Scope scope) {
                 this.functionID = functionID;
                 this.functionName = functionName;
+                this.nameId = Identifiers.intern(functionName);
                 this.type = type;
                 this.parameters = parameters;
                 this.scope = scope;
@@ -102,16 +126,28 @@ class ScopeAnalyzer {
 
         class FunctionSymbolTable {
             private Map<String, FunctionSymbolEntry> functionTable = new LinkedHashMap<>();
+            // The first function declared under each name
+            private IdMap<FunctionSymbolEntry> functionsByName = new IdMap<>();
 
             FunctionSymbolTable(){
                 String[] parameters = {"none"}; 
                 addFunction("main", parameters, "void", mainScope, "1");
             }
             
-            void addFunction(String functionName, String[] parameters,String type, Scope scope,String uid) {
+            FunctionSymbolEntry addFunction(String functionName, String[] parameters,String type, Scope scope,String uid) {
                 String functionID = uid;  // Generate unique identifier for the function
                 FunctionSymbolEntry entry = new FunctionSymbolEntry(functionID, functionName, type, parameters, scope);
                 functionTable.put(functionID, entry);
+                functionsByName.putIfAbsent(entry.nameId, entry);
+                scope.function = entry;
+                if (scope.parentScope != null) {
+                    scope.parentScope.functions.put(entry.nameId, entry);
+                }
+                return entry;
+            }
+
+            FunctionSymbolEntry get(int functionId) {
+                return functionsByName.get(functionId);
             }
     
             void printFunctionTable() {
@@ -131,207 +167,209 @@ class ScopeAnalyzer {
 
     private FunctionSymbolTable functionTable = new FunctionSymbolTable(); 
 
-    public void depthFirstTraversal(Node node) {
-       
-        if (node == null) return;
-
-        if (node.symb.equals("CALL")) {
-            isFuncCall = true; 
-        }
-
-        if (node.symb.equals("SUBFUNCS")) {
-            nextEndIsAfterSubFunc = true;
-            Node funcNode = node.children.get(0);
-            boolean hasSubFunction = false;
-            if(funcNode.children.size() != 0){
-                hasSubFunction = true;
-            }
-            if (hasSubFunction) {
-                endSubFunc = false;
-                isSubFunction = true;  
-            } else {
-                endSubFunc = true;
-                isSubFunction = false;
-            }
-        }
+    // What each VNAME and FNAME node was resolved to, by node index: a
+    // SymbolEntry or a FunctionSymbolEntry. A declaration is bound to the
+    // entry it made and a use to the declaration it refers to, so the later
+    // phases read the result of scope analysis instead of looking names up
+    // again.
+    private Object[] bindings = new Object[0];
+    private final List<Node> callSites = new ArrayList<>();
+    private final List<Scope> callScopes = new ArrayList<>();
+
+    // Visits the tree in preorder. The tree is laid out in preorder, so this
+    // is a scan over the subtree's index range that jumps past the children
+    // of a node whenever visit says to skip them.
+    public void depthFirstTraversal(Node root) {
+        if (root == null) return;
+
+        SyntaxTree tree = root.tree;
+        bindings = new Object[tree.size()];
+        int end = tree.subtreeEnd(root.index);
+        for (int node = root.index; node < end; ) {
+            node = visit(tree.node(node)) ? node + 1 : tree.subtreeEnd(node);
+        }
+        bindCalls();
+    }
 
-        if (node.symb.equals("end")) {
-            if(node.parent.symb.equals("BODY")){
-                if(currentScope != mainScope){
-                    currentScope = currentScope.parentScope;
+    // Handles one node and returns whether its children should be visited.
+    private boolean visit(Node node) {
+        switch (node.kind()) {
+            case CALL:
+                isFuncCall = true; 
+                break;
+            case SUBFUNCS:
+                nextEndIsAfterSubFunc = true;
+                Node funcNode = node.child(0);
+                boolean hasSubFunction = false;
+                if(funcNode.childCount() != 0){
+                    hasSubFunction = true;
                 }
-            }
-        }
-
-        if (node.symb.equals("VTYP")) {
-            if (!node.children.isEmpty()) {
-                currVarType = node.children.get(0).symb;
-            }
-        }
-
-        if (node.symb.equals("FTYP")) {
-            if (!node.children.isEmpty()) {
-                funcType = node.children.get(0).symb;
-            }
-        }
-
-        if (node.symb.equals("VNAME")) {
-            if (!node.children.isEmpty()) {
-                currVarName = node.children.get(0).symb;
-
-                if(declarationCounter >= 3){
-                    isFuncParameters = false;
-                    declarationCounter = 0;
+                if (hasSubFunction) {
+                    endSubFunc = false;
+                    isSubFunction = true;  
+                } else {
+                    endSubFunc = true;
+                    isSubFunction = false;
                 }
-
-                if(isFuncParameters){
-                    boolean isDuplicate = false;
-
-                    String varKey = currVarName + "@" + currentScope.scopeName;
-
-                    for (SymbolEntry entry : symbolTable.symbolTable.values()) {
-                        if (entry.name.equals(varKey) && entry.scope == currentScope) {
-                            
-                            isDuplicate = true;
-                            break;
-                        }
+                break;
+            case END:
+                if(node.parent().kind() == NodeKind.BODY){
+                    if(currentScope != mainScope){
+                        currentScope = currentScope.parentScope;
                     }
-
-                    if (isDuplicate) {
-                        if(scopeSuccess){
-                            System.err.println("Error: Variable '" + currVarName + "' has already been declared in the current scope.");
-                            scopeSuccess = false;
-                        }
-                        return;
-                    } else {
-                        symbolTable.addEntry("VNAME", varKey, "num", currentScope,node.unid);
+                }
+                break;
+            case VTYP:
+                if (!node.isLeaf()) {
+                    currVarType = node.child(0).word();
+                }
+                break;
+            case FTYP:
+                if (!node.isLeaf()) {
+                    funcType = node.child(0).word();
+                }
+                break;
+            case VNAME:
+                if (!node.isLeaf()) {
+                    currVarName = node.child(0).word();
+                    int varId = node.child(0).identifier();
+
+                    if(declarationCounter >= 3){
+                        isFuncParameters = false;
+                        declarationCounter = 0;
                     }
-                    declarationCounter++;
-                }else if (!currVarType.isEmpty()) {
-                    boolean isDuplicate = false;
 
-                    String varKey = currVarName + "@" + currentScope.scopeName;
+                    if(isFuncParameters){
+                        boolean isDuplicate = currentScope.variables.containsKey(varId);
 
-
-                    for (SymbolEntry entry : symbolTable.symbolTable.values()) {
-                        if (entry.name.equals(varKey) && entry.scope == currentScope) {
-                            
-                            isDuplicate = true;
-                            break;
+                        if (isDuplicate) {
+                            if(scopeSuccess){
+                                System.err.println("Error: Variable '" + currVarName + "' has already been declared in the current scope.");
+                                scopeSuccess = false;
+                            }
+                            return false;
+                        } else {
+                            bindings[node.index] = symbolTable.addEntry("VNAME", varId, "num", currentScope,String.valueOf(node.unid()));
                         }
-                    }
+                        declarationCounter++;
+                    }else if (!currVarType.isEmpty()) {
+                        boolean isDuplicate = currentScope.variables.containsKey(varId);
 
-                    if (isDuplicate) {
-                        if(scopeSuccess){
-                            System.err.println("Error: Variable '" + currVarName + "' has already been declared in the current scope.");
-                            scopeSuccess = false;
+                        if (isDuplicate) {
+                            if(scopeSuccess){
+                                System.err.println("Error: Variable '" + currVarName + "' has already been declared in the current scope.");
+                                scopeSuccess = false;
+                            }
+                            return false;
+                        } else {
+                            bindings[node.index] = symbolTable.addEntry("VNAME", varId, currVarType, currentScope,String.valueOf(node.unid()));
                         }
-                        return;
-                    } else {
-                        symbolTable.addEntry("VNAME", varKey, currVarType, currentScope,node.unid);
-                    }
-                    currVarType = "";
-                    currVarName = "";
-
-                } else {
-                    boolean isDeclared = false;
-                    Scope scopeToCheck = currentScope;
+                        currVarType = "";
+                        currVarName = "";
 
-                    while (scopeToCheck != null) {
-                        String varKey = currVarName + "@" + scopeToCheck.scopeName;
-                    
-                        for (SymbolEntry entry : symbolTable.symbolTable.values()) {
-                            String entryKey = entry.name.split("@")[0] + "@" + entry.scope.scopeName; 
-                    
-                            if (entryKey.equals(varKey) && entry.entryType.equals("VNAME") && entry.scope == scopeToCheck) {
-                                isDeclared = true;
-                                break;
+                    } else {
+                        SymbolEntry declaration = lookupVariable(varId, currentScope);
+                        if (declaration == null) {
+                            if(scopeSuccess){
+                                System.err.println("Error: Variable '" + currVarName + "' has not been declared in the current or ancestor scopes.");
+                                scopeSuccess = false;
                             }
+                            return false;
+                        
                         }
-                    
-                        if (isDeclared) break;  
-                        scopeToCheck = scopeToCheck.parentScope;  
-                    }
-                    
+                        bindings[node.index] = declaration;
 
-                    if (!isDeclared) {
-                        if(scopeSuccess){
-                            System.err.println("Error: Variable '" + currVarName + "' has not been declared in the current or ancestor scopes.");
-                            scopeSuccess = false;
-                        }
-                        return;
-                        
+                        currVarName = "";
                     }
-
-                    currVarName = "";
                 }
-            }
-        }
+                break;
+            case FNAME:
 
-        if (node.symb.equals("FNAME")) {
+                String functionName = node.child(0).word();
+                int functionId = node.child(0).identifier();
 
-            String functionName = node.children.get(0).symb;
-
-            if (isFuncCall) {
-                functionCalls.put(functionName, currentScope.scopeName);
-                isFuncCall = false;
-            } else {
+                if (isFuncCall) {
+                    functionCalls.put(functionName, currentScope.scopeName);
+                    callSites.add(node);
+                    callScopes.add(currentScope);
+                    isFuncCall = false;
+                } else {
 
-                isFuncParameters = true;             
+                    isFuncParameters = true;             
 
-                    if (functionName.equals(currentScope.scopeName)) {       
-                        if(scopeSuccess){
-                            System.err.println("Error: Function '" + functionName + "' cannot have the same name as its parent scope.");
-                            scopeSuccess = false;
-                        }
-                        //System.exit(1);
-                        return;
-                    }else{
-                        boolean siblingConflict = false;
-    
-                        for (FunctionSymbolEntry entry : functionTable.functionTable.values()) {
-                            if (entry.functionName.equals(functionName) && entry.scope.parentScope.scopeName == currentScope.scopeName) {
-                                siblingConflict = true;
-                                break;
-                            }
-                        } 
-                        if(siblingConflict){
+                        if (functionId == currentScope.nameId) {       
                             if(scopeSuccess){
-                                System.err.println("Error: Function " + functionName +  " cannot have the same name as a sibling in the scope.");
+                                System.err.println("Error: Function '" + functionName + "' cannot have the same name as its parent scope.");
                                 scopeSuccess = false;
                             }
                             //System.exit(1);
-                            return;
+                            return false;
                         }else{
-                            Scope newFunctionScope = new Scope(functionName, currentScope);
-                            currentScope.addChildScope(newFunctionScope);
+                            boolean siblingConflict = currentScope.functions.containsKey(functionId);
+                            if(siblingConflict){
+                                if(scopeSuccess){
+                                    System.err.println("Error: Function " + functionName +  " cannot have the same name as a sibling in the scope.");
+                                    scopeSuccess = false;
+                                }
+                                //System.exit(1);
+                                return false;
+                            }else{
+                                Scope newFunctionScope = new Scope(functionName, currentScope);
+                                currentScope.addChildScope(newFunctionScope);
                             
-                            currentScope = newFunctionScope;
-                            isSubFunction = false;  
+                                currentScope = newFunctionScope;
+                                isSubFunction = false;  
 
-                            String[] parameters = {"(num","num","num)"}; 
-                            functionTable.addFunction(functionName, parameters, funcType, currentScope, node.unid);
+                                String[] parameters = {"(num","num","num)"}; 
+                                bindings[node.index] = functionTable.addFunction(functionName, parameters, funcType, currentScope, String.valueOf(node.unid()));
                         
-                    }    
+                        }    
+                    }
                 }
-            }
- 
+                break;
         }
-        for (Node child : node.children) {
-            depthFirstTraversal(child);
+        return true;
+    }
+
+    // A call can name a function declared further down, so calls are bound
+    // once the traversal has seen every declaration: to the function of that
+    // name declared in the calling scope, to the calling function itself when
+    // it recurses, or failing both to the first function with that name.
+    private void bindCalls() {
+        for (int i = 0; i < callSites.size(); i++) {
+            Node fnameNode = callSites.get(i);
+            Scope callingScope = callScopes.get(i);
+            int functionId = fnameNode.child(0).identifier();
+            FunctionSymbolEntry function = callingScope.functions.get(functionId);
+            if (function == null) {
+                function = callingScope.nameId == functionId ? callingScope.function : functionTable.get(functionId);
+            }
+            bindings[fnameNode.index] = function;
         }
+        callSites.clear();
+        callScopes.clear();
+    }
+
+    // The declaration a VNAME node was resolved to, or null if it was not.
+    SymbolEntry variableAt(Node vnameNode) {
+        return (SymbolEntry) bindings[vnameNode.index];
+    }
+
+    // The function an FNAME node declares or calls, or null.
+    FunctionSymbolEntry functionAt(Node fnameNode) {
+        return (FunctionSymbolEntry) bindings[fnameNode.index];
     }
 
     public void checkFuncCall() {
         for (Map.Entry<String, String> funcCallEntry : functionCalls.entrySet()) {
             String functionName = funcCallEntry.getKey();
             String callingScopeName = funcCallEntry.getValue();
+            int functionId = Identifiers.intern(functionName);
 
-            Scope callingScope = findScopeByName(callingScopeName, mainScope);
+            Scope callingScope = scopesByName.get(Identifiers.intern(callingScopeName));
     
             if (callingScope != null) {
-                boolean isChildScope = false;
-                if (callingScope.scopeName.equals(functionName)) {
+                if (callingScope.nameId == functionId) {
                     if (functionName.equals("main")) {
                         if(scopeSuccess){
                             System.err.println("Error: Can't recurse main.");
@@ -343,14 +381,7 @@ class ScopeAnalyzer {
                         System.out.println("Recursion detected in function: " + functionName);
                     }
                 } else {
-                    for (Scope childScope : callingScope.childScopes) {
-                        if (childScope.scopeName.equals(functionName)) {
-                            isChildScope = true;
-                            break;
-                        }
-                    }
-    
-                    if (isChildScope) {
+                    if (callingScope.functions.containsKey(functionId)) {
                         System.out.println("Function call '" + functionName + "' is in an immediate child scope of '" + callingScopeName + "'.");
                     } else {
                         if(scopeSuccess){
@@ -370,38 +401,27 @@ class ScopeAnalyzer {
         }
     }
 
-    private Scope findScopeByName(String scopeName, Scope currentScope) {
-        if (currentScope.scopeName.equals(scopeName)) {
-            return currentScope;
-        }
-    
-        for (Scope childScope : currentScope.childScopes) {
-            Scope foundScope = findScopeByName(scopeName, childScope);
-            if (foundScope != null) {
-                return foundScope;
-            }
-        }
-    
-        return null;
-    }
-
     public void printAllTables() {
         symbolTable.printSymbolTable();
         functionTable.printFunctionTable();
     }
     
+    // The tree is read back from syntax_tree.bin. -Dcompiler.treeInput=xml
+    // reads the syntax_tree.xml export instead, so a hand-edited tree or one
+    // written by another tool can be checked and translated; the parse has
+    // to leave the XML export on for the file to be there.
+    static final boolean XML_INPUT = "xml".equals(System.getProperty("compiler.treeInput"));
+
     public Node parseSyntaxTree(String filePath) {
         Node root = null;
 
-        try {
-            File xmlFile = new File(filePath);
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document doc = builder.parse(xmlFile);
-            doc.getDocumentElement().normalize();
-
-            Element rootElement = (Element) doc.getElementsByTagName("ROOT").item(0);
-            root = parseNode(rootElement, null);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(filePath)), 1 << 16)) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            try {
+                root = loadSyntaxTree(reader, filePath);
+            } finally {
+                reader.close();
+            }
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -409,52 +429,131 @@ class ScopeAnalyzer {
 
         return root;
     }
-    
 
-    private Node parseNode(Element element, Node parent) {
-        String unid = getTagValue("UNID", element);
-        String symb = getTagValue("SYMB", element);
-    
-        Node currentNode = new Node(symb, unid);
-        currentNode.parent = parent;  
-
-        NodeList childrenElements = element.getElementsByTagName("CHILDREN");
-        if (childrenElements != null && childrenElements.getLength() > 0) {
-            NodeList childIDs = childrenElements.item(0).getChildNodes();
-            for (int i = 0; i < childIDs.getLength(); i++) {
-                org.w3c.dom.Node childNode = childIDs.item(i);
-                if (childNode.getNodeType() == org.w3c.dom.Node.ELEMENT_NODE) {
-                    String childId = childNode.getTextContent();
-                    Element childElement = findElementByUNID(childId, element);
-                    if (childElement != null) {
-                        Node parsedChild = parseNode(childElement, currentNode);
-                        currentNode.addChild(parsedChild);
-                    }
+    // Reads syntax_tree.xml in a single pass. The ROOT and NODE elements are
+    // numbered in document order and indexed by UNID; every CHILDREN entry
+    // is kept as an (element, child UNID) pair. Linking the pairs afterwards
+    // costs one map lookup each. As with the DOM search this replaces, a
+    // child has to be nested inside the element that lists it, and nodes no
+    // list reaches are left out of the tree.
+    private static Node loadSyntaxTree(XMLStreamReader reader, String filePath) throws IOException, XMLStreamException {
+        List<String> symbs = new ArrayList<>();
+        int[] ends = new int[64];
+        int[] open = new int[64];
+        int depth = 0;
+        IntMap elementsByUnid = new IntMap();
+        int[] childPairs = new int[128];
+        int pairCount = 0;
+        boolean[] hasUnid = new boolean[64];
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                String name = reader.getLocalName();
+                if (name.equals("ROOT") || name.equals("NODE")) {
+                    ends[open[--depth]] = symbs.size();
+                }
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            String name = reader.getLocalName();
+            if (name.equals("ROOT") || name.equals("NODE")) {
+                if (name.equals("ROOT") != symbs.isEmpty()) {
+                    throw new IOException(filePath + ": the tree must start with one ROOT element");
+                }
+                int element = symbs.size();
+                symbs.add(null);
+                if (element == ends.length) {
+                    ends = Arrays.copyOf(ends, element * 2);
+                    hasUnid = Arrays.copyOf(hasUnid, element * 2);
+                }
+                if (depth == open.length) {
+                    open = Arrays.copyOf(open, depth * 2);
+                }
+                open[depth++] = element;
+            } else if (depth == 0) {
+                continue;
+            } else if (name.equals("UNID")) {
+                int element = open[depth - 1];
+                int unid = Integer.parseInt(reader.getElementText().trim());
+                if (!hasUnid[element]) {
+                    hasUnid[element] = true;
+                    elementsByUnid.putIfAbsent(unid, element);
+                }
+            } else if (name.equals("SYMB")) {
+                int element = open[depth - 1];
+                String symb = reader.getElementText();
+                if (symbs.get(element) == null) {
+                    symbs.set(element, symb);
                 }
+            } else if (name.equals("ID")) {
+                if (pairCount + 2 > childPairs.length) {
+                    childPairs = Arrays.copyOf(childPairs, childPairs.length * 2);
+                }
+                childPairs[pairCount++] = open[depth - 1];
+                childPairs[pairCount++] = Integer.parseInt(reader.getElementText().trim());
             }
         }
-    
-        return currentNode;
-    }
-    
+        if (symbs.isEmpty()) {
+            throw new IOException(filePath + " has no ROOT element");
+        }
 
-    private Element findElementByUNID(String unid, Element parent) {
-        NodeList nodes = parent.getElementsByTagName("NODE");
-        for (int i = 0; i < nodes.getLength(); i++) {
-            Element nodeElement = (Element) nodes.item(i);
-            if (nodeElement.getElementsByTagName("UNID").item(0).getTextContent().equals(unid)) {
-                return nodeElement;
+        SyntaxTree.Builder tree = new SyntaxTree.Builder();
+        for (int element = 0; element < symbs.size(); element++) {
+            String symb = symbs.get(element);
+            if (symb == null) {
+                throw new IOException(filePath + ": node " + element + " has no SYMB");
+            }
+            tree.add(symb, Grammar.nonterminal(symb) < 0);
+        }
+        boolean[] linked = new boolean[symbs.size()];
+        for (int i = 0; i < pairCount; i += 2) {
+            int parent = childPairs[i];
+            int child = elementsByUnid.get(childPairs[i + 1]);
+            if (child > parent && child < ends[parent] && !linked[child]) {
+                linked[child] = true;
+                tree.addChild(parent, child);
             }
         }
-        return null;
+        return tree.build(0).root();
     }
-    
-    private String getTagValue(String tag, Element element) {
-        NodeList nodeList = element.getElementsByTagName(tag);
-        if (nodeList != null && nodeList.getLength() > 0) {
-            return nodeList.item(0).getTextContent();
+
+    // The records are in breadth-first order and the UNIDs in them are the
+    // preorder positions, which the built tree gives every node anyway.
+    public Node readSyntaxTree(String filePath) {
+        Node root = null;
+
+        try {
+            BinaryFormat.Reader in = new BinaryFormat.Reader(filePath, BinaryFormat.TREE);
+            SyntaxTree.Builder tree = new SyntaxTree.Builder();
+            List<int[]> childIndexes = new ArrayList<>();
+            while (in.hasMore()) {
+                in.readInt();
+                String symb = in.readString();
+                boolean isTerminal = in.readBoolean();
+                int[] children = new int[in.readInt()];
+                for (int i = 0; i < children.length; i++) {
+                    children[i] = in.readInt();
+                }
+                tree.add(symb, isTerminal);
+                childIndexes.add(children);
+            }
+
+            for (int i = 0; i < childIndexes.size(); i++) {
+                for (int child : childIndexes.get(i)) {
+                    tree.addChild(i, child);
+                }
+            }
+            root = tree.build(0).root();
+
+        } catch (Exception e) {
+            e.printStackTrace();
         }
-        return null;
+
+        return root;
     }
 
     public void printTree(Node root) {
@@ -463,127 +562,105 @@ class ScopeAnalyzer {
         }
     }
 
-    public boolean isVariableDeclared(String varName, Scope currentScope) {
-        Scope scopeToCheck = currentScope;
-        while (scopeToCheck != null) {
-            String varKey = varName + "@" + scopeToCheck.scopeName;
-            
-            for (SymbolEntry entry : symbolTable.symbolTable.values()) {
-                String entryKey = entry.name.split("@")[0] + "@" + entry.scope.scopeName;  
-                if (entryKey.equals(varKey) && entry.entryType.equals("VNAME")) {
-                    return true; 
-                }
+    // The nearest declaration of a variable on the way from scope up to
+    // main: one hash probe per level, whatever the size of the program.
+    private SymbolEntry lookupVariable(int varId, Scope scope) {
+        for (Scope scopeToCheck = scope; scopeToCheck != null; scopeToCheck = scopeToCheck.parentScope) {
+            SymbolEntry entry = scopeToCheck.variables.get(varId);
+            if (entry != null) {
+                return entry;
             }
-    
-            scopeToCheck = scopeToCheck.parentScope;  
         }
-        return false;  
+        return null;
+    }
+
+    // The queries below take the Identifiers id of a name, as Node.identifier()
+    // gives it. The String forms are for callers that only have the name; a
+    // name that was never interned is not declared anywhere.
+
+    public boolean isVariableDeclared(int varId, Scope currentScope) {
+        return lookupVariable(varId, currentScope) != null;
+    }
+
+    public boolean isVariableDeclared(String varName, Scope currentScope) {
+        return isVariableDeclared(Identifiers.find(varName), currentScope);
     }
     
 
+    public boolean isFunctionDeclared(int functionId, Scope currentScope) {
+        return currentScope != null && functionTable.get(functionId) != null;  
+    }
+
     public boolean isFunctionDeclared(String functionName, Scope currentScope) {
-        Scope scopeToCheck = currentScope;
-        while (scopeToCheck != null) {
-            for (FunctionSymbolEntry entry : functionTable.functionTable.values()) {
-                if (entry.functionName.equals(functionName)) {
-                    return true;  
-                }
-            }
-            scopeToCheck = scopeToCheck.parentScope;  
-        }
-        return false;  
+        return isFunctionDeclared(Identifiers.find(functionName), currentScope);
+    }
+
+    public String getVariableType(int varId, Scope currentScope) {
+        SymbolEntry entry = lookupVariable(varId, currentScope);
+        return entry != null ? entry.varOrFuncType : null; 
     }
 
     public String getVariableType(String varName, Scope currentScope) {
-        Scope scopeToCheck = currentScope;
-        while (scopeToCheck != null) {
-            String varKey = varName + "@" + scopeToCheck.scopeName;
-            
-            for (SymbolEntry entry : symbolTable.symbolTable.values()) {
-                String entryKey = entry.name.split("@")[0] + "@" + entry.scope.scopeName;  
-    
-                if (entryKey.equals(varKey) && entry.entryType.equals("VNAME")) {
-                    return entry.varOrFuncType;  
-                }
-            }
-    
-            scopeToCheck = scopeToCheck.parentScope;  
-        }
-        return null; 
+        return getVariableType(Identifiers.find(varName), currentScope);
     }
     
 
+    public String getFunctionReturnType(int functionId, Scope currentScope) {
+        FunctionSymbolEntry entry = currentScope != null ? functionTable.get(functionId) : null;
+        return entry != null ? entry.type : null;  
+    }
+
     public String getFunctionReturnType(String functionName, Scope currentScope) {
-        Scope scopeToCheck = currentScope;
-        while (scopeToCheck != null) {
-            for (FunctionSymbolEntry entry : functionTable.functionTable.values()) {
-                if (entry.functionName.equals(functionName)) {
-                    return entry.type;  
-                }
-            }
-            scopeToCheck = scopeToCheck.parentScope;  
-        }
-        return null;  
+        return getFunctionReturnType(Identifiers.find(functionName), currentScope);
     }
 
-    public Scope getScopeForFunction(String functionName) {
-        for (FunctionSymbolEntry entry : functionTable.functionTable.values()) {
-            if (entry.functionName.equals(functionName)) {
-                return entry.scope;
-            }
+    public Scope getScopeForFunction(int functionId) {
+        FunctionSymbolEntry entry = functionTable.get(functionId);
+        if (entry != null) {
+            return entry.scope;
         }
 
         if(scopeSuccess){
-            System.err.println("Error: Function '" + functionName + "' not found in the function table.");
+            System.err.println("Error: Function '" + Identifiers.name(functionId) + "' not found in the function table.");
             scopeSuccess = false;
         }
         //System.exit(1);
         return null;
     }
 
+    public String getVar(int varId, Scope mianScope) {
+        SymbolEntry entry = lookupVariable(varId, currentScope);
+        return entry != null ? entry.name : null; 
+    }
+
     public String getVar(String varName, Scope mianScope) {
-        Scope scopeToCheck = currentScope;
-        while (scopeToCheck != null) {
-            String varKey = varName + "@" + scopeToCheck.scopeName;
-            
-            for (SymbolEntry entry : symbolTable.symbolTable.values()) {
-                String entryKey = entry.name.split("@")[0] + "@" + entry.scope.scopeName;  
-    
-                if (entryKey.equals(varKey) && entry.entryType.equals("VNAME")) {
-                    return entry.name;  
-                }
-            }
-    
-            scopeToCheck = scopeToCheck.parentScope;  
-        }
-        return null; 
+        return getVar(Identifiers.find(varName), mianScope);
     }
     
 
-    public String getFunc(String functionName, Scope currentScope) {
-    
-        for (FunctionSymbolEntry entry : functionTable.functionTable.values()) {
-            if (entry.functionName.equals(functionName)) {
-                return entry.functionName;  
-            }
-        }
+    public String getFunc(int functionId, Scope currentScope) {
+        FunctionSymbolEntry entry = functionTable.get(functionId);
+        return entry != null ? entry.functionName : null;
+    }
 
-        for (Scope childScope : currentScope.childScopes) {  
-            String result = getFunc(functionName, childScope);
-            if (result != null) {
-                return result; 
-            }
-        }
-        
-        return null;
+    public String getFunc(String functionName, Scope currentScope) {
+        return getFunc(Identifiers.find(functionName), currentScope);
     }
     
     
+    // Reads the tree back from the file the parser saved, for running this
+    // phase on its own.
     public void scopeAndTypeCheck() {
-        String filePath = "syntax_tree.xml";
-        
-        Node root = this.parseSyntaxTree(filePath); 
-    
+        Node root = XML_INPUT ? this.parseSyntaxTree("syntax_tree.xml") : this.readSyntaxTree("syntax_tree.bin"); 
+        scopeAndTypeCheck(root);
+    }
+
+    // Checks the tree the parser has just built, without reading it back.
+    void scopeAndTypeCheck(SyntaxTree tree) {
+        scopeAndTypeCheck(tree.root());
+    }
+
+    private void scopeAndTypeCheck(Node root) {
         this.depthFirstTraversal(root);  
         if (scopeSuccess == true) {
             this.checkFuncCall(); 
@@ -0,0 +1,269 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// A syntax tree stored as parallel int arrays instead of one object per node.
+// Each node has a Grammar symbol id, its parent, its first child and its next
+// sibling, and a terminal also points into a pool that holds every distinct
+// word once, next to the Identifiers id of each V and F word. Missing links
+// are -1.
+//
+// Nodes are laid out in preorder, so the root is node 0, a node's index is
+// its UNID and every subtree is one contiguous range of indexes. The parsers
+// build a tree through a Builder; the later phases read it through Node.
+final class SyntaxTree {
+
+    private static final int INPUT = Grammar.terminal("input");
+    private static final int V = Grammar.terminal("V");
+    private static final int F = Grammar.terminal("F");
+    private static final int T = Grammar.terminal("T");
+    private static final int N = Grammar.terminal("N");
+
+    private final int size;
+    private final int[] symbols;
+    private final int[] words;
+    private final int[] parents;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final String[] wordPool;
+    private final int[] wordIdentifiers;
+
+    private SyntaxTree(int size, int[] symbols, int[] words, int[] parents, int[] firstChildren,
+            int[] nextSiblings, String[] wordPool, int[] wordIdentifiers) {
+        this.size = size;
+        this.symbols = symbols;
+        this.words = words;
+        this.parents = parents;
+        this.firstChildren = firstChildren;
+        this.nextSiblings = nextSiblings;
+        this.wordPool = wordPool;
+        this.wordIdentifiers = wordIdentifiers;
+    }
+
+    int size() {
+        return size;
+    }
+
+    Node root() {
+        return new Node(this, 0);
+    }
+
+    Node node(int index) {
+        return new Node(this, index);
+    }
+
+    int symbol(int node) {
+        return symbols[node];
+    }
+
+    NodeKind kind(int node) {
+        return NodeKind.of(symbols[node]);
+    }
+
+    // The word of a terminal as it appeared in the source, or null for a
+    // non-terminal.
+    String word(int node) {
+        return words[node] >= 0 ? wordPool[words[node]] : null;
+    }
+
+    boolean isTerminal(int node) {
+        return Grammar.isTerminal(symbols[node]);
+    }
+
+    // The word of a terminal, or the name of a non-terminal.
+    String symb(int node) {
+        return words[node] >= 0 ? wordPool[words[node]] : Grammar.symbolName(symbols[node]);
+    }
+
+    // Identifiers id of a variable or function name, or -1 for any other node.
+    int identifier(int node) {
+        return words[node] >= 0 ? wordIdentifiers[words[node]] : -1;
+    }
+
+    int parent(int node) {
+        return parents[node];
+    }
+
+    int firstChild(int node) {
+        return firstChildren[node];
+    }
+
+    int nextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    int childCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    int child(int node, int position) {
+        int child = firstChildren[node];
+        for (int i = 0; i < position && child >= 0; i++) {
+            child = nextSiblings[child];
+        }
+        if (child < 0) {
+            throw new IndexOutOfBoundsException("Node " + node + " has no child " + position);
+        }
+        return child;
+    }
+
+    // The first index after the subtree of node.
+    int subtreeEnd(int node) {
+        for (int n = node; n >= 0; n = parents[n]) {
+            if (nextSiblings[n] >= 0) {
+                return nextSiblings[n];
+            }
+        }
+        return size;
+    }
+
+    // Terminal symbol of a word as it appears in the tree: keywords are their
+    // own terminal, "< input" is input, and any other word is a name or a
+    // constant of class V, F, T or N.
+    static int terminalSymbol(String word) {
+        int keyword = Grammar.terminal(word);
+        if (keyword >= 0) {
+            return keyword;
+        } else if (word.equals("< input")) {
+            return INPUT;
+        } else if (word.startsWith("V_")) {
+            return V;
+        } else if (word.startsWith("F_")) {
+            return F;
+        } else if (word.startsWith("\"")) {
+            return T;
+        }
+        return N;
+    }
+
+    // Collects nodes in any order, bottom-up for the SLR parser and top-down
+    // for the recursive-descent one, and lays the finished tree out in
+    // preorder. Nodes that never got attached under the root are dropped.
+    static final class Builder {
+        private int size;
+        private int[] symbols = new int[64];
+        private int[] words = new int[64];
+        private int[] parents = new int[64];
+        private int[] firstChildren = new int[64];
+        private int[] lastChildren = new int[64];
+        private int[] nextSiblings = new int[64];
+        private final HashMap<String, Integer> wordIds = new HashMap<>();
+        private final ArrayList<String> wordPool = new ArrayList<>();
+
+        int add(String value, boolean isTerminal) {
+            return isTerminal ? addTerminal(terminalSymbol(value), value)
+                : addNonterminal(Grammar.nonterminal(value));
+        }
+
+        // A non-terminal, or a keyword terminal whose word is its symbol name.
+        int add(NodeKind kind) {
+            return kind.isTerminal() ? addTerminal(kind.symbol(), kind.symbolName)
+                : addNonterminal(kind.symbol() - Grammar.TERMINAL_COUNT);
+        }
+
+        int add(NodeKind kind, String word) {
+            return addTerminal(kind.symbol(), word);
+        }
+
+        int addTerminal(int terminal, String word) {
+            Integer id = wordIds.get(word);
+            if (id == null) {
+                id = wordPool.size();
+                wordIds.put(word, id);
+                wordPool.add(word);
+            }
+            return add(terminal, id);
+        }
+
+        int addNonterminal(int nonterminal) {
+            return add(Grammar.TERMINAL_COUNT + nonterminal, -1);
+        }
+
+        private int add(int symbol, int word) {
+            if (size == symbols.length) {
+                int capacity = size * 2;
+                symbols = Arrays.copyOf(symbols, capacity);
+                words = Arrays.copyOf(words, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                lastChildren = Arrays.copyOf(lastChildren, capacity);
+                nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            }
+            symbols[size] = symbol;
+            words[size] = word;
+            parents[size] = -1;
+            firstChildren[size] = -1;
+            lastChildren[size] = -1;
+            nextSiblings[size] = -1;
+            return size++;
+        }
+
+        // Appends child after the children parent already has.
+        void addChild(int parent, int child) {
+            parents[child] = parent;
+            if (lastChildren[parent] < 0) {
+                firstChildren[parent] = child;
+            } else {
+                nextSiblings[lastChildren[parent]] = child;
+            }
+            lastChildren[parent] = child;
+        }
+
+        boolean hasChildren(int node) {
+            return firstChildren[node] >= 0;
+        }
+
+        // Walks the subtree of root in preorder without a stack, following
+        // first-child links down and sibling or parent links back up, and
+        // copies each node to its new index.
+        SyntaxTree build(int root) {
+            int[] order = new int[size];
+            int[] newIndex = new int[size];
+            int count = 0;
+            int node = root;
+            while (true) {
+                newIndex[node] = count;
+                order[count++] = node;
+                if (firstChildren[node] >= 0) {
+                    node = firstChildren[node];
+                    continue;
+                }
+                while (node != root && nextSiblings[node] < 0) {
+                    node = parents[node];
+                }
+                if (node == root) {
+                    break;
+                }
+                node = nextSiblings[node];
+            }
+
+            int[] treeSymbols = new int[count];
+            int[] treeWords = new int[count];
+            int[] treeParents = new int[count];
+            int[] treeFirstChildren = new int[count];
+            int[] treeNextSiblings = new int[count];
+            for (int i = 0; i < count; i++) {
+                int old = order[i];
+                treeSymbols[i] = symbols[old];
+                treeWords[i] = words[old];
+                treeParents[i] = old == root ? -1 : newIndex[parents[old]];
+                treeFirstChildren[i] = firstChildren[old] < 0 ? -1 : newIndex[firstChildren[old]];
+                treeNextSiblings[i] = old == root || nextSiblings[old] < 0 ? -1 : newIndex[nextSiblings[old]];
+            }
+            String[] treeWordPool = wordPool.toArray(new String[0]);
+            int[] wordIdentifiers = new int[treeWordPool.length];
+            Arrays.fill(wordIdentifiers, -1);
+            for (int i = 0; i < count; i++) {
+                if ((treeSymbols[i] == V || treeSymbols[i] == F) && wordIdentifiers[treeWords[i]] < 0) {
+                    wordIdentifiers[treeWords[i]] = Identifiers.intern(treeWordPool[treeWords[i]]);
+                }
+            }
+            return new SyntaxTree(count, treeSymbols, treeWords, treeParents, treeFirstChildren,
+                treeNextSiblings, treeWordPool, wordIdentifiers);
+        }
+    }
+}
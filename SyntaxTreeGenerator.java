@@ -1,588 +1,715 @@
-import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import java.io.*;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-
 class Parser {
 
-    public static List<String> tokens;
-    public static int index = 0;
-
-    static class TreeNode {
-        static int nodeCounter = 0;
-        int unid;
-        String value;
-        List<TreeNode> children;
-        boolean isTerminal;
-
-        TreeNode(String value, boolean isTerminal) {
-            this.unid = nodeCounter++;
-            this.value = value;
-            this.isTerminal = isTerminal;
-            this.children = new ArrayList<>();
-        }
-
-        void addChild(TreeNode child) {
-            children.add(child);
-        }
-
-        void buildXML(Document doc, Element parentElement, boolean isRoot) {
-            Element nodeElement;
-
-            if (isRoot) {
-                nodeElement = doc.createElement("ROOT");
-            } else {
-                nodeElement = doc.createElement("NODE");
-            }
-
-            if (parentElement != null && !isRoot) {
-                Element parentIdElement = doc.createElement("PARENT");
-                parentIdElement.appendChild(doc.createTextNode(String.valueOf(getParentUID(parentElement))));
-                nodeElement.appendChild(parentIdElement);
-            }
-
-            Element unidElement = doc.createElement("UNID");
-            unidElement.appendChild(doc.createTextNode(String.valueOf(unid)));
-            nodeElement.appendChild(unidElement);
+    // The state of the parse in progress. A Parser runs one parse at a time,
+    // so concurrent compilations each use their own instance.
+    private TokenBuffer tokens;
+    private int index = 0;
+    private SyntaxTree.Builder tree;
 
-            Element symbElement = doc.createElement("SYMB");
-            symbElement.appendChild(doc.createTextNode(value));
-            nodeElement.appendChild(symbElement);
+    private int node(NodeKind kind) {
+        return tree.add(kind);
+    }
 
-            if (isTerminal) {
-                Element terminalElement = doc.createElement("TERMINAL");
-                terminalElement.appendChild(doc.createTextNode(value));
-                nodeElement.appendChild(terminalElement);
-            } else {
-                if (!children.isEmpty()) {
-                    Element childrenElement = doc.createElement("CHILDREN");
-                    for (TreeNode child : children) {
-                        Element childIdElement = doc.createElement("ID");
-                        childIdElement.appendChild(doc.createTextNode(String.valueOf(child.unid)));
-                        childrenElement.appendChild(childIdElement);
-                    }
-                    nodeElement.appendChild(childrenElement);
-                }
-            }
+    private int node(NodeKind kind, String word) {
+        return tree.add(kind, word);
+    }
 
-            parentElement.appendChild(nodeElement);
+    private void addChild(int parent, int child) {
+        tree.addChild(parent, child);
+    }
 
-            for (TreeNode child : children) {
-                child.buildXML(doc, nodeElement, false);
-            }
+    // Type of the token offset places past the current one. Running off the
+    // end of the input fails the parse like any other unexpected token.
+    TokenType peek(int offset) {
+        if (index + offset >= tokens.size()) {
+            throw new RuntimeException("Unexpected end of input");
         }
+        return tokens.type(index + offset);
+    }
 
-        private int getParentUID(Element parentElement) {
-            for (int i = 0; i < parentElement.getChildNodes().getLength(); i++) {
-                if (parentElement.getChildNodes().item(i).getNodeName().equals("UNID")) {
-                    return Integer.parseInt(parentElement.getChildNodes().item(i).getTextContent());
-                }
-            }
-            return -1; 
-        }
+    TokenType peek() {
+        return peek(0);
+    }
+
+    boolean atEnd() {
+        return index >= tokens.size();
     }
 
-    static List<String> tokenize(String input) {
-        return Arrays.asList(input.split("\\s+"));
+    // Consumes the current token, whatever its type, and returns its word.
+    String advance() {
+        peek();
+        return tokens.text(index++);
     }
 
-    static void match(String expected) {
-        if (index < tokens.size() && tokens.get(index).equals(expected)) {
+    void match(TokenType expected) {
+        if (index < tokens.size() && tokens.type(index) == expected) {
             index++;
         } else {
             index = 0;
-            throw new RuntimeException("Expected " + expected + " but found " + 
-                (index < tokens.size() ? tokens.get(index) : "end of input"));
+            throw new RuntimeException("Expected " + Lexer.keywordText(expected) + " but found " + 
+                (index < tokens.size() ? tokens.text(index) : "end of input"));
                 
         }
     }
 
-    static TreeNode parsePROG() {
-        TreeNode node = new TreeNode("PROG", false);
-        match("main");
-        node.addChild(new TreeNode("main", true));
-        node.addChild(parseGLOBVARS());
-        node.addChild(parseALGO());
-        node.addChild(parseFUNCTIONS());
+    int parsePROG() {
+        int node = node(NodeKind.PROG);
+        match(TokenType.MAIN);
+        addChild(node, node(NodeKind.MAIN));
+        addChild(node, parseGLOBVARS());
+        addChild(node, parseALGO());
+        addChild(node, parseFUNCTIONS());
         return node;
     }
 
-    static TreeNode parseGLOBVARS() {
-        TreeNode node = new TreeNode("GLOBVARS", false);
-        if (isVtyp()) {
-            node.addChild(parseVTYP());
-            node.addChild(parseVNAME());
-            match(",");
-            node.addChild(new TreeNode(",", true));
-            node.addChild(parseGLOBVARS());
+    // GLOBVARS, INSTRUC and FUNCTIONS are right-recursive lists. They are
+    // parsed in a loop that hangs each tail off the node before it, so the
+    // length of a list doesn't add to the call stack.
+    int parseGLOBVARS() {
+        int first = node(NodeKind.GLOBVARS);
+        int node = first;
+        while (isVtyp()) {
+            addChild(node, parseVTYP());
+            addChild(node, parseVNAME());
+            match(TokenType.COMMA);
+            addChild(node, node(NodeKind.COMMA));
+            int tail = node(NodeKind.GLOBVARS);
+            addChild(node, tail);
+            node = tail;
         }
-        return node;
+        return first;
     }
 
-    static TreeNode parseVTYP() {
-        TreeNode node = new TreeNode("VTYP", false); 
-        if (tokens.get(index).equals("num")) {
-            match("num");
-            node.addChild(new TreeNode("num", true)); 
-        } else if (tokens.get(index).equals("text")) {
-            match("text");
-            node.addChild(new TreeNode("text", true));
+    int parseVTYP() {
+        int node = node(NodeKind.VTYP); 
+        if (peek() == TokenType.NUM) {
+            match(TokenType.NUM);
+            addChild(node, node(NodeKind.NUM)); 
+        } else if (peek() == TokenType.TEXT) {
+            match(TokenType.TEXT);
+            addChild(node, node(NodeKind.TEXT));
         }
         return node;
     }
 
-    static TreeNode parseVNAME() {
-        TreeNode node = new TreeNode("VNAME", false);
+    int parseVNAME() {
+        int node = node(NodeKind.VNAME);
         if (isVname()) {
-            String vname = tokens.get(index); 
-            match(vname);
-            node.addChild(new TreeNode(vname, true));
+            String vname = advance(); 
+            addChild(node, node(NodeKind.V, vname));
         } else {
-            throw new RuntimeException("Expected variable name but found " + tokens.get(index));
+            throw new RuntimeException("Expected variable name but found " + tokens.text(index));
         }
         return node;
     }
 
-    static TreeNode parseALGO() {
-        TreeNode node = new TreeNode("ALGO", false);
-        match("begin");
-        node.addChild(new TreeNode("begin", true));
-        node.addChild(parseINSTRUC());
-        match("end");
-        node.addChild(new TreeNode("end", true));
-        return node;
-    }
-
-    static TreeNode parseINSTRUC() {
-        TreeNode node = new TreeNode("INSTRUC", false);
+    // ALGO and BRANCH nest inside each other, so both are read here. The
+    // branches still open are kept on a stack, each with the ALGO and INSTRUC
+    // it sits in, so nesting them doesn't add to the call stack.
+    int parseALGO() {
+        Deque<int[]> branches = new ArrayDeque<>();
+        int algo = node(NodeKind.ALGO);
+        int instruc = beginALGO(algo);
+        while (true) {
+            if (instruc >= 0 && !atEnd() && peek() != TokenType.END && isCommand()) {
+                if (peek() != TokenType.IF) {
+                    addChild(instruc, parseCOMMAND());
+                    instruc = endCOMMAND(instruc);
+                    continue;
+                }
+                int command = node(NodeKind.COMMAND);
+                addChild(instruc, command);
+                int branch = node(NodeKind.BRANCH);
+                addChild(command, branch);
+                match(TokenType.IF);
+                addChild(branch, node(NodeKind.IF));
+                addChild(branch, parseCOND());
+                match(TokenType.THEN);
+                addChild(branch, node(NodeKind.THEN));
+                branches.push(new int[] {algo, instruc, branch, 0});
+                algo = node(NodeKind.ALGO);
+                addChild(branch, algo);
+                instruc = beginALGO(algo);
+                continue;
+            }
 
-        if (index >= tokens.size() || tokens.get(index).equals("end")) {
-            return node;
+            match(TokenType.END);
+            addChild(algo, node(NodeKind.END));
+            if (branches.isEmpty()) {
+                return algo;
+            }
+            int[] open = branches.peek();
+            if (open[3] == 0) {
+                open[3] = 1;
+                match(TokenType.ELSE);
+                addChild(open[2], node(NodeKind.ELSE));
+                algo = node(NodeKind.ALGO);
+                addChild(open[2], algo);
+                instruc = beginALGO(algo);
+            } else {
+                branches.pop();
+                algo = open[0];
+                instruc = endCOMMAND(open[1]);
+            }
         }
+    }
 
-        if (isCommand()) { 
-            node.addChild(parseCOMMAND());
-            match(";");
-            node.addChild(new TreeNode(";", true));
+    // Reads the "begin" of an ALGO and returns the first node of its INSTRUC
+    // list.
+    private int beginALGO(int algo) {
+        match(TokenType.BEGIN);
+        addChild(algo, node(NodeKind.BEGIN));
+        int instruc = node(NodeKind.INSTRUC);
+        addChild(algo, instruc);
+        return instruc;
+    }
 
-            if (index < tokens.size() && !tokens.get(index).equals("end")) {
-                node.addChild(parseINSTRUC());
-            }
+    // Reads the ";" after the command of instruc and returns the tail of the
+    // list, or -1 if the list ends here.
+    private int endCOMMAND(int instruc) {
+        match(TokenType.SEMICOLON);
+        addChild(instruc, node(NodeKind.SEMICOLON));
+
+        if (atEnd() || peek() == TokenType.END) {
+            return -1;
         }
-        return node;
+        int tail = node(NodeKind.INSTRUC);
+        addChild(instruc, tail);
+        return tail;
     }
 
-    static TreeNode parseCOMMAND() {
-        TreeNode node = new TreeNode("COMMAND", false);
-        switch (tokens.get(index)) {
-            case "skip":
-                match("skip");
-                node.addChild(new TreeNode("skip", true));
+    int parseCOMMAND() {
+        int node = node(NodeKind.COMMAND);
+        switch (peek()) {
+            case SKIP:
+                match(TokenType.SKIP);
+                addChild(node, node(NodeKind.SKIP));
                 break;
-            case "halt":
-                match("halt");
-                node.addChild(new TreeNode("halt", true));
+            case HALT:
+                match(TokenType.HALT);
+                addChild(node, node(NodeKind.HALT));
                 break;
-            case "print":
-                match("print");
-                node.addChild(new TreeNode("print", true)); 
-                node.addChild(parseATOMIC());
+            case PRINT:
+                match(TokenType.PRINT);
+                addChild(node, node(NodeKind.PRINT)); 
+                addChild(node, parseATOMIC());
                 break;
-            case "return":
-                match("return");
-                node.addChild(new TreeNode("return", true));
-                node.addChild(parseATOMIC());
+            case RETURN:
+                match(TokenType.RETURN);
+                addChild(node, node(NodeKind.RETURN));
+                addChild(node, parseATOMIC());
                 break;
             default:
                 if (isVname()) {
-                    node.addChild(parseASSIGN());
+                    addChild(node, parseASSIGN());
                 } else if (isFname()) {
-                    node.addChild(parseCALL());
+                    addChild(node, parseCALL());
                 } else {
-                    node.addChild(parseBRANCH());
+                    // A BRANCH nests an ALGO, so parseALGO reads it itself.
+                    throw new RuntimeException("Expected command but found " + tokens.text(index));
                 }
                 break;
         }
         return node;
     }
 
-    static TreeNode parseATOMIC() {
-        TreeNode node = new TreeNode("ATOMIC", false);
+    int parseATOMIC() {
+        int node = node(NodeKind.ATOMIC);
         if (isVname()) {
-            node.addChild(parseVNAME());
+            addChild(node, parseVNAME());
         } else {
-            node.addChild(parseCONST());
+            addChild(node, parseCONST());
         }
         return node;
     }
 
-    static TreeNode parseCONST() {
-        TreeNode node = new TreeNode("CONST", false);
+    int parseCONST() {
+        int node = node(NodeKind.CONST);
         if (isNumber()) {
-            String num = tokens.get(index);
-            match(num);
-            node.addChild(new TreeNode(num, true));
+            String num = advance();
+            addChild(node, node(NodeKind.N, num));
         } else if (isStringConst()) {
-            String str = tokens.get(index);
-            match(str);
-            node.addChild(new TreeNode(str, true)); 
+            String str = advance();
+            addChild(node, node(NodeKind.T, str)); 
         } else {
-            throw new RuntimeException("Expected constant but found " + tokens.get(index));
+            throw new RuntimeException("Expected constant but found " + tokens.text(index));
         }
         return node;
     }
 
-    static TreeNode parseASSIGN() {
-        TreeNode node = new TreeNode("ASSIGN", false);
-        node.addChild(parseVNAME());
-        if (tokens.get(index).equals("<")) {
-            match("<");
-            match("input");
-            node.addChild(new TreeNode("< input", true));
+    int parseASSIGN() {
+        int node = node(NodeKind.ASSIGN);
+        addChild(node, parseVNAME());
+        if (peek() == TokenType.INPUT) {
+            match(TokenType.INPUT);
+            addChild(node, node(NodeKind.INPUT, "< input"));
         } else {
-            match("=");
-            node.addChild(new TreeNode("=", true));
-            node.addChild(parseTERM());
+            match(TokenType.EQUAL);
+            addChild(node, node(NodeKind.EQUAL));
+            addChild(node, parseTERM());
         }
         return node;
     }
 
-    static TreeNode parseCALL() {
-        TreeNode node = new TreeNode("CALL", false);
-        node.addChild(parseFNAME());
-        match("(");
-        node.addChild(new TreeNode("(", true));
-        node.addChild(parseATOMIC());
-        match(",");
-        node.addChild(new TreeNode(",", true));
-        node.addChild(parseATOMIC());
-        match(",");
-        node.addChild(new TreeNode(",", true));
-        node.addChild(parseATOMIC());
-        match(")");
-        node.addChild(new TreeNode(")", true));
-        return node;
-    }
-
-    static TreeNode parseBRANCH() {
-        TreeNode node = new TreeNode("BRANCH", false);
-        match("if");
-        node.addChild(new TreeNode("if", true));
-        node.addChild(parseCOND());
-        match("then");
-        node.addChild(new TreeNode("then", true));
-        node.addChild(parseALGO());
-        match("else");
-        node.addChild(new TreeNode("else", true));
-        node.addChild(parseALGO());
+    int parseCALL() {
+        int node = node(NodeKind.CALL);
+        addChild(node, parseFNAME());
+        match(TokenType.LPAREN);
+        addChild(node, node(NodeKind.LPAREN));
+        addChild(node, parseATOMIC());
+        match(TokenType.COMMA);
+        addChild(node, node(NodeKind.COMMA));
+        addChild(node, parseATOMIC());
+        match(TokenType.COMMA);
+        addChild(node, node(NodeKind.COMMA));
+        addChild(node, parseATOMIC());
+        match(TokenType.RPAREN);
+        addChild(node, node(NodeKind.RPAREN));
         return node;
     }
 
-    static TreeNode parseTERM() {
-        TreeNode node = new TreeNode("TERM", false);
+    int parseTERM() {
+        int node = node(NodeKind.TERM);
         if (isVname() || isConst()) {
-            node.addChild(parseATOMIC());
+            addChild(node, parseATOMIC());
         } else if (isFname()) {
-            node.addChild(parseCALL());
+            addChild(node, parseCALL());
         } else {
-            node.addChild(parseOP());
+            addChild(node, parseOP());
         }
         return node;
     }
 
-    static TreeNode parseOP() {
-        TreeNode node = new TreeNode("OP", false);
+    int parseOP() {
+        int node = node(NodeKind.OP);
     
         if (isUnop()) {
-            node.addChild(parseUNOP());
-            match("(");
-            node.addChild(new TreeNode("(", true));
-            node.addChild(parseARG());
-            match(")");
-            node.addChild(new TreeNode(")", true));
+            addChild(node, parseUNOP());
+            match(TokenType.LPAREN);
+            addChild(node, node(NodeKind.LPAREN));
+            addChild(node, parseARG());
+            match(TokenType.RPAREN);
+            addChild(node, node(NodeKind.RPAREN));
         } else if (isBinop()) {
-            node.addChild(parseBINOP());
-            match("(");
-            node.addChild(new TreeNode("(", true));
-            node.addChild(parseARG());
-            match(",");
-            node.addChild(new TreeNode(",", true));
-            node.addChild(parseARG());
-            match(")");
-            node.addChild(new TreeNode(")", true));
+            addChild(node, parseBINOP());
+            match(TokenType.LPAREN);
+            addChild(node, node(NodeKind.LPAREN));
+            addChild(node, parseARG());
+            match(TokenType.COMMA);
+            addChild(node, node(NodeKind.COMMA));
+            addChild(node, parseARG());
+            match(TokenType.RPAREN);
+            addChild(node, node(NodeKind.RPAREN));
         }
         return node;
     }
 
-    static TreeNode parseARG() {
-        TreeNode node = new TreeNode("ARG", false);
+    int parseARG() {
+        int node = node(NodeKind.ARG);
         if (isVname() || isConst()) {
-            node.addChild(parseATOMIC());
+            addChild(node, parseATOMIC());
         } else {
-            node.addChild(parseOP());
+            addChild(node, parseOP());
         }
         return node;
     }
 
-    static TreeNode parseCOND() {
-        TreeNode node = new TreeNode("COND", false);
+    int parseCOND() {
+        int node = node(NodeKind.COND);
         
         if (isBinop()) {
             if (isAtomicAhead()) {
-                node.addChild(parseSIMPLE());
+                addChild(node, parseSIMPLE());
             } else {
-                node.addChild(parseCOMPOSIT());
+                addChild(node, parseCOMPOSIT());
             }
         } else if (isUnop()) {
-            node.addChild(parseCOMPOSIT());
+            addChild(node, parseCOMPOSIT());
         }
         return node;
     }
 
-    static TreeNode parseSIMPLE() {
-        TreeNode node = new TreeNode("SIMPLE", false);
-        node.addChild(parseBINOP());
-        match("(");
-        node.addChild(new TreeNode("(", true));
-        node.addChild(parseATOMIC());
-        match(",");
-        node.addChild(new TreeNode(",", true));
-        node.addChild(parseATOMIC());
-        match(")");
-        node.addChild(new TreeNode(")", true));
+    int parseSIMPLE() {
+        int node = node(NodeKind.SIMPLE);
+        addChild(node, parseBINOP());
+        match(TokenType.LPAREN);
+        addChild(node, node(NodeKind.LPAREN));
+        addChild(node, parseATOMIC());
+        match(TokenType.COMMA);
+        addChild(node, node(NodeKind.COMMA));
+        addChild(node, parseATOMIC());
+        match(TokenType.RPAREN);
+        addChild(node, node(NodeKind.RPAREN));
         return node;
     }
 
-    static TreeNode parseCOMPOSIT() {
-        TreeNode node = new TreeNode("COMPOSIT", false);
+    int parseCOMPOSIT() {
+        int node = node(NodeKind.COMPOSIT);
     
         if (isUnop()) {
-            node.addChild(parseUNOP());
-            match("(");
-            node.addChild(new TreeNode("(", true));
-            node.addChild(parseSIMPLE());
-            match(")");
-            node.addChild(new TreeNode(")", true));
+            addChild(node, parseUNOP());
+            match(TokenType.LPAREN);
+            addChild(node, node(NodeKind.LPAREN));
+            addChild(node, parseSIMPLE());
+            match(TokenType.RPAREN);
+            addChild(node, node(NodeKind.RPAREN));
         } else if (isBinop()) {
-            node.addChild(parseBINOP());
-            match("(");
-            node.addChild(new TreeNode("(", true));
-            node.addChild(parseSIMPLE());
-            match(",");
-            node.addChild(new TreeNode(",", true));
-            node.addChild(parseSIMPLE());
-            match(")");
-            node.addChild(new TreeNode(")", true));
+            addChild(node, parseBINOP());
+            match(TokenType.LPAREN);
+            addChild(node, node(NodeKind.LPAREN));
+            addChild(node, parseSIMPLE());
+            match(TokenType.COMMA);
+            addChild(node, node(NodeKind.COMMA));
+            addChild(node, parseSIMPLE());
+            match(TokenType.RPAREN);
+            addChild(node, node(NodeKind.RPAREN));
         } else {
-            throw new RuntimeException("Expected unary or binary operation but found " + tokens.get(index));
+            throw new RuntimeException("Expected unary or binary operation but found " + tokens.text(index));
         }
     
         return node;
     }
 
-    static TreeNode parseUNOP() {
-        TreeNode node = new TreeNode("UNOP", false);
-        String op = tokens.get(index);
-        if (op.equals("not") || op.equals("sqrt")) {
-            match(op);
-            node.addChild(new TreeNode(op, true));
+    int parseUNOP() {
+        int node = node(NodeKind.UNOP);
+        if (isUnop()) {
+            String op = advance();
+            addChild(node, node(NodeKind.of(Grammar.terminal(op))));
         } else {
-            throw new RuntimeException("Expected unary operator but found " + op);
+            throw new RuntimeException("Expected unary operator but found " + tokens.text(index));
         }
         return node;
     }
 
-    static TreeNode parseBINOP() {
-        TreeNode node = new TreeNode("BINOP", false);
-        String op = tokens.get(index);
-        match(op);
-        node.addChild(new TreeNode(op, true));
+    int parseBINOP() {
+        int node = node(NodeKind.BINOP);
+        String op = advance();
+        addChild(node, node(NodeKind.of(Grammar.terminal(op))));
         return node;
     }
 
-    static TreeNode parseFNAME() {
-        TreeNode node = new TreeNode("FNAME", false);
-        String fname = tokens.get(index);
+    int parseFNAME() {
+        int node = node(NodeKind.FNAME);
         if (isFname()) {
-            match(fname);
-            node.addChild(new TreeNode(fname, true));
+            String fname = advance();
+            addChild(node, node(NodeKind.F, fname));
         } else {
-            throw new RuntimeException("Expected function name but found " + tokens.get(index));
+            throw new RuntimeException("Expected function name but found " + tokens.text(index));
         }
         return node;
     }
 
-    static TreeNode parseFUNCTIONS() {
-        TreeNode node = new TreeNode("FUNCTIONS", false);
-        if (isFtyp()) {
-            node.addChild(parseDECL());
-            node.addChild(parseFUNCTIONS());
-        }
-        return node;
-    }
+    // A function's SUBFUNCS is another FUNCTIONS list, so DECL, BODY and
+    // SUBFUNCS are read here too. The bodies still open are kept on a stack,
+    // each with the list node its DECL hangs off, so nesting functions
+    // doesn't add to the call stack either.
+    int parseFUNCTIONS() {
+        Deque<int[]> bodies = new ArrayDeque<>();
+        int first = node(NodeKind.FUNCTIONS);
+        int node = first;
+        while (true) {
+            if (isFtyp()) {
+                int decl = node(NodeKind.DECL);
+                addChild(node, decl);
+                addChild(decl, parseHEADER());
+                int body = node(NodeKind.BODY);
+                addChild(decl, body);
+                beginBODY(body);
+                int subfuncs = node(NodeKind.SUBFUNCS);
+                addChild(body, subfuncs);
+                bodies.push(new int[] {node, body});
+                node = node(NodeKind.FUNCTIONS);
+                addChild(subfuncs, node);
+                continue;
+            }
 
-    static TreeNode parseDECL() {
-        TreeNode node = new TreeNode("DECL", false);
-        node.addChild(parseHEADER());
-        node.addChild(parseBODY());
-        return node;
+            if (bodies.isEmpty()) {
+                return first;
+            }
+            int[] open = bodies.pop();
+            endBODY(open[1]);
+            int tail = node(NodeKind.FUNCTIONS);
+            addChild(open[0], tail);
+            node = tail;
+        }
     }
 
-    static TreeNode parseHEADER() {
-        TreeNode node = new TreeNode("HEADER", false);
-        node.addChild(parseFTYP());
-        node.addChild(parseFNAME());
-        match("(");
-        node.addChild(new TreeNode("(", true));
-        node.addChild(parseVNAME());
-        match(",");
-        node.addChild(new TreeNode(",", true));
-        node.addChild(parseVNAME());
-        match(",");
-        node.addChild(new TreeNode(",", true));
-        node.addChild(parseVNAME());
-        match(")");
-        node.addChild(new TreeNode(")", true));
+    int parseHEADER() {
+        int node = node(NodeKind.HEADER);
+        addChild(node, parseFTYP());
+        addChild(node, parseFNAME());
+        match(TokenType.LPAREN);
+        addChild(node, node(NodeKind.LPAREN));
+        addChild(node, parseVNAME());
+        match(TokenType.COMMA);
+        addChild(node, node(NodeKind.COMMA));
+        addChild(node, parseVNAME());
+        match(TokenType.COMMA);
+        addChild(node, node(NodeKind.COMMA));
+        addChild(node, parseVNAME());
+        match(TokenType.RPAREN);
+        addChild(node, node(NodeKind.RPAREN));
         return node;
     }
 
-    static TreeNode parseFTYP() {
-        TreeNode node = new TreeNode("FTYP", false);
-        if (tokens.get(index).equals("num")) {
-            match("num");
-            node.addChild(new TreeNode("num", true));
+    int parseFTYP() {
+        int node = node(NodeKind.FTYP);
+        if (peek() == TokenType.NUM) {
+            match(TokenType.NUM);
+            addChild(node, node(NodeKind.NUM));
         } else {
-            match("void");
-            node.addChild(new TreeNode("void", true));
+            match(TokenType.VOID);
+            addChild(node, node(NodeKind.VOID));
         }
         return node;
     }
 
-    static TreeNode parseBODY() {
-        TreeNode node = new TreeNode("BODY", false);
-        node.addChild(parsePROLOG());
-        node.addChild(parseLOCVARS());
-        node.addChild(parseALGO());
-        node.addChild(parseEPILOG());
-        node.addChild(parseSUBFUNCS());
-        
-        if (index < tokens.size()) {
-            match("end");
-            node.addChild(new TreeNode("end", true));
+    // The parts of a BODY before its SUBFUNCS.
+    private void beginBODY(int node) {
+        addChild(node, parsePROLOG());
+        addChild(node, parseLOCVARS());
+        addChild(node, parseALGO());
+        addChild(node, parseEPILOG());
+    }
+
+    private void endBODY(int node) {
+        if (!atEnd()) {
+            match(TokenType.END);
+            addChild(node, node(NodeKind.END));
         } else {
             throw new RuntimeException("Expected 'end' but reached end of input.");
         }
-    
-        return node;
     }
 
-    static TreeNode parsePROLOG() {
-        TreeNode node = new TreeNode("PROLOG", false);
-        match("{");
-        node.addChild(new TreeNode("{", true));
+    int parsePROLOG() {
+        int node = node(NodeKind.PROLOG);
+        match(TokenType.LBRACE);
+        addChild(node, node(NodeKind.LBRACE));
         return node;
     }
 
-    static TreeNode parseEPILOG() {
-        TreeNode node = new TreeNode("EPILOG", false);
-        match("}");
-        node.addChild(new TreeNode("}", true));
+    int parseEPILOG() {
+        int node = node(NodeKind.EPILOG);
+        match(TokenType.RBRACE);
+        addChild(node, node(NodeKind.RBRACE));
         return node;
     }
 
-    static TreeNode parseLOCVARS() {
-        TreeNode node = new TreeNode("LOCVARS", false);
+    int parseLOCVARS() {
+        int node = node(NodeKind.LOCVARS);
         for (int i = 0; i < 3; i++) {
-            node.addChild(parseVTYP());
-            node.addChild(parseVNAME());
-            match(",");
-            node.addChild(new TreeNode(",", true));
+            addChild(node, parseVTYP());
+            addChild(node, parseVNAME());
+            match(TokenType.COMMA);
+            addChild(node, node(NodeKind.COMMA));
         }
         return node;
     }
 
-    static TreeNode parseSUBFUNCS() {
-        TreeNode node = new TreeNode("SUBFUNCS", false);
-        node.addChild(parseFUNCTIONS());
-        return node;
+    // FIRST-set checks on the current token. They switch on the token type,
+    // so no decision compares words or runs a regex.
+    boolean isVtyp() {
+        switch (peek()) {
+            case NUM:
+            case TEXT:
+                return true;
+            default:
+                return false;
+        }
     }
 
-    static boolean isVtyp() {
-        return tokens.get(index).equals("num") || tokens.get(index).equals("text");
+    boolean isVname() {
+        return peek() == TokenType.V_NAMES;
     }
 
-    static boolean isVname() {
-        return tokens.get(index).matches("V_[a-zA-Z0-9_]*");
+    boolean isFname() {
+        return peek() == TokenType.F_NAMES;
     }
 
-    static boolean isFname() {
-        return tokens.get(index).matches("F_[a-zA-Z_][a-zA-Z0-9_]*");
+    boolean isConst() {
+        return isNumber() || isStringConst(); 
     }
 
-    static boolean isConst() {
-        return isNumber() || isStringConst(); 
+    boolean isNumber() {
+        return peek() == TokenType.N_NUMBERS;
     }
 
-    static boolean isNumber() {
-        return tokens.get(index).matches("-?\\d+(\\.\\d+)?");
+    boolean isStringConst() {
+        return peek() == TokenType.TEXT_SNIPPET;
     }
 
-    static boolean isStringConst() {
-        return tokens.get(index).matches("\"[A-Za-z ]+\"");
+    boolean isCommand() {
+        switch (peek()) {
+            case SKIP:
+            case HALT:
+            case PRINT:
+            case RETURN:
+            case V_NAMES:
+            case F_NAMES:
+            case IF:
+                return true;
+            default:
+                return false;
+        }
     }
 
-    static boolean isCommand() {
-        return tokens.get(index).equals("skip") || tokens.get(index).equals("halt") || tokens.get(index).equals("print") || tokens.get(index).equals("return") || isVname() || isFname() || tokens.get(index).equals("if");
+    boolean isFtyp() {
+        if (atEnd()) {
+            return false;
+        }
+        switch (peek()) {
+            case NUM:
+            case VOID:
+                return true;
+            default:
+                return false;
+        }
     }
 
-    static boolean isFtyp() {
-        return index < tokens.size() && (tokens.get(index).equals("num") || tokens.get(index).equals("void"));
+    boolean isUnop() {
+        switch (peek()) {
+            case NOT:
+            case SQRT:
+                return true;
+            default:
+                return false;
+        }
     }
 
-    static boolean isUnop() {
-        return tokens.get(index).equals("not") || tokens.get(index).equals("sqrt");
+    boolean isBinop() {
+        switch (peek()) {
+            case OR:
+            case AND:
+            case EQ:
+            case GRT:
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
+                return true;
+            default:
+                return false;
+        }
     }
 
-    static boolean isBinop() {
-        return tokens.get(index).equals("or") || tokens.get(index).equals("and") || tokens.get(index).equals("eq") || tokens.get(index).equals("grt") || tokens.get(index).equals("add") || tokens.get(index).equals("sub") || tokens.get(index).equals("mul") || tokens.get(index).equals("div");
+    // A condition is SIMPLE when the binary operator is applied straight to
+    // an atomic value, i.e. the token after "(" is a name or a constant.
+    boolean isAtomicAhead() {
+        switch (peek(2)) {
+            case V_NAMES:
+            case TEXT_SNIPPET:
+            case N_NUMBERS:
+                return true;
+            default:
+                return false;
+        }
     }
 
-    static boolean isAtomicAhead() {
-        int tempindex = index;
-        return tokens.get(tempindex + 2).matches("V_[a-zA-Z0-9_]*") || tokens.get(tempindex + 2).matches("\"[A-Za-z ]+\"") || tokens.get(tempindex + 2).matches("-?\\d+(\\.\\d+)?"); 
+    // One record per node in breadth-first order, so the root is record 0:
+    // UNID, symbol, terminal flag, then the child count and the record index
+    // of each child.
+    static void saveTreeToFile(SyntaxTree tree, String filePath) {
+        try (BinaryFormat.Writer out = new BinaryFormat.Writer(filePath, BinaryFormat.TREE)) {
+            int[] queue = new int[tree.size()];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = 0;
+            while (head < tail) {
+                int node = queue[head++];
+                out.writeInt(node);
+                out.writeString(tree.symb(node));
+                out.writeBoolean(tree.isTerminal(node));
+                out.writeInt(tree.childCount(node));
+                for (int child = tree.firstChild(node); child >= 0; child = tree.nextSibling(child)) {
+                    out.writeInt(tail);
+                    queue[tail++] = child;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    static void saveTreeToXML(TreeNode tree, String filePath) {
-        try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.newDocument();
+    // Streams the tree in the layout the DOM Transformer used to produce:
+    // the same declaration, four spaces per level and a trailing newline.
+    static void saveTreeToXML(SyntaxTree tree, String filePath) {
+        try (OutputStream out = XMLOutput.open(filePath)) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n".getBytes(StandardCharsets.US_ASCII));
+            XMLStreamWriter writer = XMLOutput.writer(out);
+            writer.writeStartElement("SYNTREE");
+            writeXML(writer, tree, 1);
+            XMLOutput.newLine(writer, 0);
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.close();
 
-            Element rootElement = doc.createElement("SYNTREE");
-            doc.appendChild(rootElement);
+            System.out.println("Syntax tree saved to " + filePath);
 
-            tree.buildXML(doc, rootElement, true);
+        } catch (IOException | XMLStreamException e) {
+            e.printStackTrace();
+        }
+    }
 
-            TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            Transformer transformer = transformerFactory.newTransformer();
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            DOMSource source = new DOMSource(doc);
-            StreamResult result = new StreamResult(new File(filePath));
+    // Writes the nodes in index order, which is document order. Before a node
+    // is opened, every open element that isn't its parent is closed.
+    private static void writeXML(XMLStreamWriter writer, SyntaxTree tree, int depth) throws XMLStreamException {
+        int[] open = new int[64];
+        int openCount = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            int parent = tree.parent(node);
+            while (openCount > 0 && open[openCount - 1] != parent) {
+                openCount--;
+                XMLOutput.newLine(writer, depth + openCount);
+                writer.writeEndElement();
+            }
+            writeStart(writer, tree, node, depth + openCount);
+            if (openCount == open.length) {
+                open = Arrays.copyOf(open, openCount * 2);
+            }
+            open[openCount++] = node;
+        }
+        while (openCount > 0) {
+            openCount--;
+            XMLOutput.newLine(writer, depth + openCount);
+            writer.writeEndElement();
+        }
+    }
 
-            transformer.transform(source, result);
+    // Everything of the node's element up to where its children go.
+    private static void writeStart(XMLStreamWriter writer, SyntaxTree tree, int node, int depth) throws XMLStreamException {
+        int parent = tree.parent(node);
+        String value = tree.symb(node);
+        XMLOutput.newLine(writer, depth);
+        writer.writeStartElement(parent < 0 ? "ROOT" : "NODE");
 
-            System.out.println("Syntax tree saved to " + filePath);
+        if (parent >= 0) {
+            XMLOutput.newLine(writer, depth + 1);
+            XMLOutput.element(writer, "PARENT", String.valueOf(parent));
+        }
 
-        } catch (ParserConfigurationException | TransformerException e) {
-            e.printStackTrace();
+        XMLOutput.newLine(writer, depth + 1);
+        XMLOutput.element(writer, "UNID", String.valueOf(node));
+        XMLOutput.newLine(writer, depth + 1);
+        XMLOutput.element(writer, "SYMB", value);
+
+        if (tree.isTerminal(node)) {
+            XMLOutput.newLine(writer, depth + 1);
+            XMLOutput.element(writer, "TERMINAL", value);
+        } else if (tree.firstChild(node) >= 0) {
+            XMLOutput.newLine(writer, depth + 1);
+            writer.writeStartElement("CHILDREN");
+            for (int child = tree.firstChild(node); child >= 0; child = tree.nextSibling(child)) {
+                XMLOutput.newLine(writer, depth + 2);
+                XMLOutput.element(writer, "ID", String.valueOf(child));
+            }
+            XMLOutput.newLine(writer, depth + 1);
+            writer.writeEndElement();
         }
     }
 
@@ -618,14 +745,39 @@ class Parser {
             return;
         }
     
-        tokens = tokenize(inputString);
+        SyntaxTree syntaxTree;
+        try {
+            syntaxTree = parse(new Lexer().tokenizeFile(inputFilePath));
+        } catch (IOException e) {
+            System.err.println("Error reading the input file: " + e.getMessage());
+            return;
+        }
     
-        TreeNode syntaxTree = parsePROG();
+        saveTree(syntaxTree);
+    }
+
+    // Parses a whole program. Throws a RuntimeException when the tokens are
+    // not a valid program.
+    SyntaxTree parse(TokenBuffer tokens) {
+        this.tokens = tokens;
         index = 0;
+        tree = new SyntaxTree.Builder();
+        try {
+            return tree.build(parsePROG());
+        } finally {
+            this.tokens = null;
+            tree = null;
+        }
+    }
+
+    static void saveTree(SyntaxTree syntaxTree) {
+        String savedTo = XMLOutput.ENABLED ? "syntax_tree.xml" : "syntax_tree.bin";
+        System.out.println("Parsing phase has passed! Syntax tree saved to '" + savedTo + "'");
     
-        System.out.println("Parsing phase has passed! Syntax tree saved to 'syntax_tree.xml'");
-    
-        saveTreeToXML(syntaxTree, "syntax_tree.xml");
+        saveTreeToFile(syntaxTree, "syntax_tree.bin");
+        if (XMLOutput.ENABLED) {
+            saveTreeToXML(syntaxTree, "syntax_tree.xml");
+        }
     }
     
 }
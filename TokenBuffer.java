@@ -0,0 +1,292 @@
+import java.util.Arrays;
+
+// Compact token stream: one entry per token spread over parallel primitive
+// arrays (type ordinal, start offset, length, for N tokens the numeric value
+// and for V and F tokens the Identifiers id) that point back into the shared
+// source text, either a char[] or a memory-mapped file. Reading a token's
+// type or position allocates nothing; text(i) builds a String only when asked
+// and never for a name, which is already interned.
+//
+// While a buffer is being filled, add() numbers the names in a table of the
+// buffer's own, without locking, and internNames() then interns each
+// distinct name once and rewrites the tokens' ids. A buffer filled on a
+// worker thread therefore never touches the shared Identifiers pool; the
+// thread that joins it does, once per name rather than once per token.
+public class TokenBuffer {
+
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    final CharSequence source;
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private double[] numbers;
+    private int[] identifiers;
+    private int size;
+
+    // Buffer-local name table: slots hold local id + 1, and each local id
+    // has the hash of its name and the first token that has it. Tokens at
+    // index interned and above hold local ids until internNames() runs.
+    private int[] nameSlots;
+    private int[] nameHashes;
+    private int[] nameTokens;
+    private int nameCount;
+    private int interned;
+
+    TokenBuffer(CharSequence source) {
+        this(source, 16);
+    }
+
+    TokenBuffer(CharSequence source, int capacity) {
+        this.source = source;
+        capacity = Math.max(capacity, 16);
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        numbers = new double[capacity];
+        identifiers = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int end) {
+        if (size == types.length) {
+            grow(size * 2);
+        }
+        types[size] = type.ordinal();
+        starts[size] = start;
+        lengths[size] = end - start;
+        if (type == TokenType.N_NUMBERS) {
+            numbers[size] = parseNumber(source, start, end);
+        }
+        boolean isName = type == TokenType.V_NAMES || type == TokenType.F_NAMES;
+        identifiers[size] = isName ? localName(start, end) : -1;
+        size++;
+    }
+
+    // Local id of the name at [start, end), hashed like String.hashCode so
+    // internNames() can hand the hash on to Identifiers.
+    private int localName(int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        if (nameSlots == null) {
+            nameSlots = new int[64];
+            nameHashes = new int[32];
+            nameTokens = new int[32];
+        }
+        int mask = nameSlots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        for (; nameSlots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = nameSlots[slot] - 1;
+            if (nameHashes[id] == hash && sameName(nameTokens[id], start, end)) {
+                return id;
+            }
+        }
+
+        int id = nameCount;
+        if (id == nameHashes.length) {
+            nameHashes = Arrays.copyOf(nameHashes, id * 2);
+            nameTokens = Arrays.copyOf(nameTokens, id * 2);
+        }
+        nameHashes[id] = hash;
+        nameTokens[id] = size;
+        nameSlots[slot] = id + 1;
+        nameCount++;
+        if (nameCount * 2 > nameSlots.length) {
+            rehashNames();
+        }
+        return id;
+    }
+
+    private void rehashNames() {
+        nameSlots = new int[nameSlots.length * 2];
+        int mask = nameSlots.length - 1;
+        for (int id = 0; id < nameCount; id++) {
+            int slot = (nameHashes[id] ^ (nameHashes[id] >>> 16)) & mask;
+            while (nameSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            nameSlots[slot] = id + 1;
+        }
+    }
+
+    private boolean sameName(int index, int start, int end) {
+        if (lengths[index] != end - start) {
+            return false;
+        }
+        int other = starts[index];
+        for (int i = 0; i < end - start; i++) {
+            if (source.charAt(other + i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Replaces the local ids of the names added since the last call with
+    // Identifiers ids, interning each distinct name once. Must be called by
+    // the thread that owns the buffer before its ids or texts are read.
+    void internNames() {
+        if (nameCount > 0) {
+            int[] ids = new int[nameCount];
+            for (int id = 0; id < nameCount; id++) {
+                int token = nameTokens[id];
+                ids[id] = Identifiers.intern(source, starts[token], end(token), nameHashes[id]);
+            }
+            for (int i = interned; i < size; i++) {
+                if (identifiers[i] >= 0) {
+                    identifiers[i] = ids[identifiers[i]];
+                }
+            }
+            nameSlots = null;
+            nameHashes = null;
+            nameTokens = null;
+            nameCount = 0;
+        }
+        interned = size;
+    }
+
+    // Appends every token of another buffer over the same source.
+    void addAll(TokenBuffer other) {
+        addRange(other, 0, other.size, 0);
+    }
+
+    // Appends tokens [from, to) of another buffer, moving their offsets by
+    // shift so they point at the same text in this buffer's source.
+    void addRange(TokenBuffer other, int from, int to, int shift) {
+        internNames();
+        other.internNames();
+        int count = to - from;
+        if (size + count > types.length) {
+            grow(Math.max(size * 2, size + count));
+        }
+        System.arraycopy(other.types, from, types, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        System.arraycopy(other.numbers, from, numbers, size, count);
+        System.arraycopy(other.identifiers, from, identifiers, size, count);
+        if (shift != 0) {
+            for (int i = size; i < size + count; i++) {
+                starts[i] += shift;
+            }
+        }
+        size += count;
+        interned = size;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        numbers = Arrays.copyOf(numbers, capacity);
+        identifiers = Arrays.copyOf(identifiers, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int typeCode(int index) {
+        return types[index];
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int start(int index) {
+        return starts[index];
+    }
+
+    public int length(int index) {
+        return lengths[index];
+    }
+
+    public int end(int index) {
+        return starts[index] + lengths[index];
+    }
+
+    // Index of the first token that ends at or after offset, or size() if
+    // every token ends before it.
+    public int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] + lengths[middle] < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public double number(int index) {
+        return numbers[index];
+    }
+
+    // Identifiers id of a V or F token, -1 for any other.
+    public int identifier(int index) {
+        return identifiers[index];
+    }
+
+    public String text(int index) {
+        if (identifiers[index] >= 0) {
+            return Identifiers.name(identifiers[index]);
+        }
+        String keyword = Lexer.keywordText(type(index));
+        return keyword != null ? keyword : source.subSequence(starts[index], end(index)).toString();
+    }
+
+    public boolean textEquals(int index, String text) {
+        if (lengths[index] != text.length()) {
+            return false;
+        }
+        int start = starts[index];
+        for (int i = 0; i < text.length(); i++) {
+            if (source.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Token token(int index) {
+        return new Token(type(index), text(index));
+    }
+
+    // Number literals are at most a sign, digits and one dot. When the digits
+    // fit in 15 decimal places and the fraction has no more than 22 of them,
+    // both the mantissa and the power of ten are exact doubles and one division
+    // gives the correctly rounded value; anything longer goes through
+    // Double.parseDouble.
+    static double parseNumber(CharSequence text, int start, int end) {
+        boolean negative = text.charAt(start) == '-';
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                scale = 0;
+                continue;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            digits++;
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        scale = Math.max(scale, 0);
+        if (digits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(text.subSequence(start, end).toString());
+        }
+        double value = mantissa / POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+}
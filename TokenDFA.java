@@ -0,0 +1,149 @@
+import java.util.Arrays;
+import java.util.Map;
+
+// Table-driven scanner for the token classes of the language. The reserved
+// keywords and the four lexical patterns are compiled once into a single DFA
+// over the ASCII alphabet, so a token is recognised by reading each character
+// exactly once and keeping the last accepting position (longest match).
+class TokenDFA {
+
+    private static final int ALPHABET = 128;
+    private static final int DEAD = 0;
+    private static final int START = 1;
+
+    private static int[] next = new int[ALPHABET * 128];
+    private static TokenType[] accept = new TokenType[128];
+    private static int stateCount = 2;
+
+    static {
+        for (Map.Entry<String, TokenType> entry : Lexer.reservedKeywords.entrySet()) {
+            addKeyword(entry.getKey(), entry.getValue());
+        }
+
+        // V_[a-z]([a-z]|[0-9])*  and  F_[a-z]([a-z]|[0-9])*
+        addName('V', TokenType.V_NAMES);
+        addName('F', TokenType.F_NAMES);
+
+        // "[A-Z][a-z]{0,7}"
+        int quote = edge(START, '"', newState(null));
+        int closed = newState(TokenType.TEXT_SNIPPET);
+        int letters = edges(quote, 'A', 'Z', newState(null));
+        for (int count = 0; count < 7; count++) {
+            edge(letters, '"', closed);
+            letters = edges(letters, 'a', 'z', newState(null));
+        }
+        edge(letters, '"', closed);
+
+        // -?(0|[1-9][0-9]*)\.[0-9]+|-?[1-9][0-9]*|0
+        int minus = edge(START, '-', newState(null));
+        int zero = edge(START, '0', newState(TokenType.N_NUMBERS));
+        int minusZero = edge(minus, '0', newState(null));
+        int integer = edges(START, '1', '9', newState(TokenType.N_NUMBERS));
+        edges(minus, '1', '9', integer);
+        edges(integer, '0', '9', integer);
+        int dot = edge(zero, '.', newState(null));
+        edge(minusZero, '.', dot);
+        edge(integer, '.', dot);
+        int fraction = edges(dot, '0', '9', newState(TokenType.N_NUMBERS));
+        edges(fraction, '0', '9', fraction);
+
+        next = Arrays.copyOf(next, stateCount * ALPHABET);
+        accept = Arrays.copyOf(accept, stateCount);
+    }
+
+    int tokenEnd;
+    TokenType tokenType;
+    boolean reachedLimit;
+
+    // Finds the longest token starting at start and ending before limit.
+    // On success the token spans [start, tokenEnd) and has type tokenType.
+    // reachedLimit tells a caller reading a window of a larger input that the
+    // scan was still alive at limit, so more input could change the result.
+    boolean match(CharSequence input, int start, int limit) {
+        int state = START;
+        int lastEnd = -1;
+        TokenType lastType = null;
+
+        int i = start;
+        for (; i < limit; i++) {
+            char c = input.charAt(i);
+            if (c >= ALPHABET) {
+                break;
+            }
+            state = next[state * ALPHABET + c];
+            if (state == DEAD) {
+                break;
+            }
+            if (accept[state] != null) {
+                lastEnd = i + 1;
+                lastType = accept[state];
+            }
+        }
+        reachedLimit = i == limit;
+
+        if (lastType == null) {
+            return false;
+        }
+        tokenEnd = lastEnd;
+        tokenType = lastType;
+        return true;
+    }
+
+    // The old lexer tried the keywords one after the other and took the first
+    // that matched, while the DFA takes the longest match. The two only agree
+    // while no keyword is a prefix of another, so a keyword that breaks that
+    // rule fails the build of the table.
+    private static void addKeyword(String keyword, TokenType type) {
+        int state = START;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (accept[state] != null) {
+                throw new IllegalStateException("Keyword '" + keyword + "' starts with the keyword of type " + accept[state]);
+            }
+            char c = keyword.charAt(i);
+            int target = next[state * ALPHABET + c];
+            state = target != DEAD ? target : edge(state, c, newState(null));
+        }
+        if (accept[state] != null) {
+            throw new IllegalStateException("Keyword '" + keyword + "' is already a keyword of type " + accept[state]);
+        }
+        for (int c = 0; c < ALPHABET; c++) {
+            if (next[state * ALPHABET + c] != DEAD) {
+                throw new IllegalStateException("Keyword '" + keyword + "' is a prefix of another keyword");
+            }
+        }
+        accept[state] = type;
+    }
+
+    private static void addName(char prefix, TokenType type) {
+        int letter = edge(START, prefix, newState(null));
+        int underscore = edge(letter, '_', newState(null));
+        int name = edges(underscore, 'a', 'z', newState(type));
+        edges(name, 'a', 'z', name);
+        edges(name, '0', '9', name);
+    }
+
+    private static int newState(TokenType type) {
+        if (stateCount == accept.length) {
+            next = Arrays.copyOf(next, next.length * 2);
+            accept = Arrays.copyOf(accept, accept.length * 2);
+        }
+        accept[stateCount] = type;
+        return stateCount++;
+    }
+
+    private static int edge(int from, char c, int to) {
+        int existing = next[from * ALPHABET + c];
+        if (existing != DEAD && existing != to) {
+            throw new IllegalStateException("Token classes overlap on '" + c + "'");
+        }
+        next[from * ALPHABET + c] = to;
+        return to;
+    }
+
+    private static int edges(int from, char low, char high, int to) {
+        for (char c = low; c <= high; c++) {
+            edge(from, c, to);
+        }
+        return to;
+    }
+}
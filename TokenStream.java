@@ -0,0 +1,172 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Pull-based token source. Tokens are scanned from the reader only when they
+// are asked for, through a window that is refilled in place and only grows
+// when a single token (or an unrecognised line) is longer than the window, so
+// memory does not depend on the size of the source file.
+public class TokenStream implements Iterator<Token>, Closeable {
+
+    private static final int WINDOW = 8192;
+
+    private final Reader reader;
+    private final TokenDFA dfa = new TokenDFA();
+    private char[] buffer = new char[WINDOW];
+    private CharBuffer view = CharBuffer.wrap(buffer);
+    private int pos;
+    private int limit;
+    private long bufferOffset;
+    private long lineStart = -1;
+    private boolean eof;
+    private Token next;
+
+    TokenStream(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = scan();
+        }
+        return next != null;
+    }
+
+    @Override
+    public Token next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Token token = next;
+        next = null;
+        return token;
+    }
+
+    public Stream<Token> stream() {
+        Spliterator<Token> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    // Same line rules as tokenizeToXML: every line is trimmed, whitespace
+    // separates tokens and no token continues past the end of a line.
+    private Token scan() {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return null;
+            }
+
+            char c = buffer[pos];
+            if (c == '\n' || c == '\r') {
+                pos++;
+                lineStart = -1;
+                continue;
+            }
+            if (lineStart < 0) {
+                if (c <= ' ') {
+                    pos++;
+                    continue;
+                }
+                lineStart = bufferOffset + pos;
+            }
+            if (Character.isWhitespace(c) || (c <= ' ' && restOfLineIsBlank())) {
+                pos++;
+                continue;
+            }
+
+            boolean matched = dfa.match(view, pos, limit);
+            while (dfa.reachedLimit && !eof) {
+                fill();
+                matched = dfa.match(view, pos, limit);
+            }
+            if (!matched) {
+                throw new IllegalArgumentException("Lexical Error: Unrecognized token at index " + (bufferOffset + pos - lineStart) + ": '" + restOfLine() + "'");
+            }
+
+            String keyword = Lexer.keywordText(dfa.tokenType);
+            String value = keyword != null ? keyword : new String(buffer, pos, dfa.tokenEnd - pos);
+            pos = dfa.tokenEnd;
+            return new Token(dfa.tokenType, value);
+        }
+    }
+
+    // Moves the unread part of the window to the front, growing it if it is
+    // already full, and reads more input behind it. Returns false at the end of
+    // the input.
+    private boolean fill() {
+        if (pos > 0) {
+            System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+            bufferOffset += pos;
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buffer.length) {
+            char[] grown = new char[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, limit);
+            buffer = grown;
+            view = CharBuffer.wrap(buffer);
+        }
+        try {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read <= 0) {
+                eof = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean restOfLineIsBlank() {
+        for (int i = 0; ; i++) {
+            if (pos + i == limit && !fill()) {
+                return true;
+            }
+            char c = buffer[pos + i];
+            if (c == '\n' || c == '\r') {
+                return true;
+            }
+            if (c > ' ') {
+                return false;
+            }
+        }
+    }
+
+    private String restOfLine() {
+        StringBuilder rest = new StringBuilder();
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (c == '\n' || c == '\r') {
+                break;
+            }
+            rest.append(c);
+            pos++;
+        }
+        int end = rest.length();
+        while (end > 0 && rest.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return rest.substring(0, end);
+    }
+}
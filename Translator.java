@@ -1,3 +1,5 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 
 public class Translator {
@@ -22,14 +24,14 @@ public class Translator {
     
     // Translation for PROG
     public String translatePROG(Node Prog) {
-        Node AlgoNode = Prog.children.get(2);
+        Node AlgoNode = Prog.child(2);
         String aCode = translateALGO(AlgoNode);
         return aCode + " STOP\r\n ";
     }
 
 
     public String translateALGO(Node AlgoNode) {
-        Node IntrucNode = AlgoNode.children.get(1);
+        Node IntrucNode = AlgoNode.child(1);
         return translateINSTRUC(IntrucNode);
     }
 
@@ -39,43 +41,72 @@ public class Translator {
     }
 
     // Translation for INSTRUC1 ::= COMMAND ; INSTRUC2
+    // The chain is walked in a loop, one command after the other, and ends
+    // with the translation of the empty INSTRUC.
     public String translateINSTRUC(Node instrucNode) {
-        String code2 = "";
-        if(instrucNode.children.size() == 0){
-            return translateINSTRUC1(instrucNode);
-        }
-        Node CommandNode = instrucNode.children.get(0);
-        String code1 = translateCOMMAND(CommandNode);
-        if(instrucNode.children.size() == 3){
-            Node instruc1Node = instrucNode.children.get(2);
-            code2 += translateINSTRUC(instruc1Node);
-        }else{
-            Node instruc1Node = instrucNode.children.get(1);
-            code2 += translateINSTRUC1(instruc1Node);
-        }
-        return code1 + code2;
+        StringBuilder code = new StringBuilder();
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(instrucNode);
+        translatePending(pending, code);
+        return code.toString();
     }
 
+    // Appends the translation of every pending item, popping them in order:
+    // a String is code to append as it is, a Node an INSTRUC chain still to
+    // be translated. A BRANCH inside a chain pushes the rest of the chain
+    // and the parts of the branch instead of recursing into its two ALGOs,
+    // so nested branches don't add to the call stack. Labels and temporary
+    // variables are still numbered in the order the recursive translation
+    // gave them.
+    private void translatePending(Deque<Object> pending, StringBuilder code) {
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof String) {
+                code.append((String) next);
+                continue;
+            }
+            Node instrucNode = (Node) next;
+            boolean ended = true;
+            while(instrucNode.childCount() != 0){
+                Node CommandNode = instrucNode.child(0);
+                if(CommandNode.child(0).kind() == NodeKind.BRANCH){
+                    pending.push(instrucNode.childCount() != 3 ? instrucNode.child(1) : instrucNode.child(2));
+                    beginBRANCH(CommandNode.child(0), pending, code);
+                    ended = false;
+                    break;
+                }
+                code.append(translateCOMMAND(CommandNode));
+                if(instrucNode.childCount() != 3){
+                    instrucNode = instrucNode.child(1);
+                    break;
+                }
+                instrucNode = instrucNode.child(2);
+            }
+            if(ended){
+                code.append(translateINSTRUC1(instrucNode));
+            }
+        }
+    }
 
     // Translation for COMMAND
     public String translateCOMMAND(Node CommandNode) {
-        Node key = CommandNode.children.get(0);
-        switch (key.symb) {
-            case "skip":
+        Node key = CommandNode.child(0);
+        switch (key.kind()) {
+            case SKIP:
                 return "\r\nREM DO NOTHING ";
 
-            case "halt":
+            case HALT:
                 return "\r\nSTOP ";
 
-            case "print":
-                Node AtomicNode = CommandNode.children.get(1);
+            case PRINT:
+                Node AtomicNode = CommandNode.child(1);
                 String codeString = translateATOMIC(AtomicNode);
                 return "\r\nPrint" +  " " + codeString;
-            case "ASSIGN":
+            case ASSIGN:
                 return translateASSIGN(key);
-            case "CALL":
+            case CALL:
                 return translateCALL(key);
-            case "BRANCH":
+            case BRANCH:
                 return translateBRANCH(key);
             default:
                 break;
@@ -84,18 +115,18 @@ public class Translator {
     }
 
     public String translateATOMIC(Node AtomicNode){
-        Node child = AtomicNode.children.get(0);
-        if(child.symb.equals("VNAME")){
-            return translateVNAME(child.children.get(0));
+        Node child = AtomicNode.child(0);
+        if(child.kind() == NodeKind.VNAME){
+            return translateVNAME(child);
         }else{
             return translateCONST(child);
         }
     }
 
     public String translateATOMIC1(Node AtomicNode, String place){
-        Node child = AtomicNode.children.get(0);
-        if(child.symb.equals("VNAME")){
-            return "(" + place + ":=" + translateVNAME(child.children.get(0)) + ")\r\n";
+        Node child = AtomicNode.child(0);
+        if(child.kind() == NodeKind.VNAME){
+            return "(" + place + ":=" + translateVNAME(child) + ")\r\n";
         }else{
             return "(" + place + ":=" + translateCONST(child) + ")\r\n";
         }
@@ -103,31 +134,31 @@ public class Translator {
     
 
     public String translateCONST(Node constNode){
-        String constant = constNode.children.get(0).symb;
+        String constant = constNode.child(0).word();
         return constant;
     }
 
     public String translateASSIGN(Node AssignNode){
-        Node vnameNode = AssignNode.children.get(0);
-        if(AssignNode.children.size() == 2){
-            String codeString = translateVNAME(vnameNode.children.get(0));
+        Node vnameNode = AssignNode.child(0);
+        if(AssignNode.childCount() == 2){
+            String codeString = translateVNAME(vnameNode);
             return "INPUT" + " " + codeString;
         }else{
-            Node TermNode = AssignNode.children.get(2);
+            Node TermNode = AssignNode.child(2);
             String place = newvar();
-            String x = scopeAnalyzer.getVar(vnameNode.children.get(0).symb,scopeAnalyzer.mainScope);
+            String x = translateVNAME(vnameNode);
             return translateTERM(TermNode,place) + "[" + x +"= " + place + "]\r\n";
         }   
     }
 
     public String translateTERM(Node TermNode, String place){
-        Node term = TermNode.children.get(0);
-        switch (term.symb) {
-            case "ATOMIC":
+        Node term = TermNode.child(0);
+        switch (term.kind()) {
+            case ATOMIC:
                 return translateATOMIC1(term,place);
-            case "CALL":
+            case CALL:
                 return translateCALL(term);
-            case "OP":
+            case OP:
                 return translateOP(term,place);
             default:
                 break;
@@ -136,30 +167,31 @@ public class Translator {
     }
 
     public String translateCALL(Node callNode){
-        Node fnameNode = callNode.children.get(0);
-        Node atomic1Node = callNode.children.get(2);
-        Node atomic2Node = callNode.children.get(4);
-        Node atomic3Node = callNode.children.get(6);
+        Node fnameNode = callNode.child(0);
+        Node atomic1Node = callNode.child(2);
+        Node atomic2Node = callNode.child(4);
+        Node atomic3Node = callNode.child(6);
 
-        String fname = scopeAnalyzer.getFunc(fnameNode.children.get(0).symb, scopeAnalyzer.mainScope);
+        ScopeAnalyzer.FunctionSymbolEntry function = scopeAnalyzer.functionAt(fnameNode);
+        String fname = function != null ? function.functionName : null;
 
         return "CALL_" + fname + "(" + translateATOMIC(atomic1Node)+ ", " + translateATOMIC(atomic2Node) +", " + translateATOMIC(atomic3Node) + ")\r\n";
     }
 
     public String translateOP(Node opNode, String place){
-        Node op = opNode.children.get(0);
-        switch (op.symb) {
-            case "UNOP":
+        Node op = opNode.child(0);
+        switch (op.kind()) {
+            case UNOP:
                 String place1 = newvar();
-                String code1 = translateARG(opNode.children.get(2),place1);
-                String operator = translateUNOP(op.children.get(0));
+                String code1 = translateARG(opNode.child(2),place1);
+                String operator = translateUNOP(op.child(0));
                 return code1 + place + " := " + operator + "(" + place1 + ")\r\n";
-            case "BINOP":
+            case BINOP:
                 String place2 = newvar();
                 String place3 = newvar();
-                String code2 = translateARG(opNode.children.get(2),place2);
-                String code3 = translateARG(opNode.children.get(4),place3);
-                String operator1 = translateBINOP(op.children.get(0));
+                String code2 = translateARG(opNode.child(2),place2);
+                String code3 = translateARG(opNode.child(4),place3);
+                String operator1 = translateBINOP(op.child(0));
                 return code2 + code3 + "(" + place + " := " + place2 +" "+ operator1 +" "+ place3 + ")\r\n";
             default:
                 break;
@@ -168,8 +200,8 @@ public class Translator {
     }
 
     public String translateARG(Node argNode, String place){
-        Node child = argNode.children.get(0);
-        if(child.symb.equals("ATOMIC")){
+        Node child = argNode.child(0);
+        if(child.kind() == NodeKind.ATOMIC){
             return translateATOMIC1(child,place);
         }else{
             return translateOP(child,place);
@@ -177,32 +209,34 @@ public class Translator {
     }
 
     public String translateUNOP(Node op){
-        switch (op.symb) {
-            case "sqrt":
+        switch (op.kind()) {
+            case SQRT:
                 return "SQR";
-            case "not":
+            case NOT:
                 
         }
         return "";
     }
 
+    // The unique name scope analysis gave the variable this VNAME refers to.
     public String translateVNAME(Node vnameNode){
-        return scopeAnalyzer.getVar(vnameNode.symb,scopeAnalyzer.mainScope);
+        ScopeAnalyzer.SymbolEntry declaration = scopeAnalyzer.variableAt(vnameNode);
+        return declaration != null ? declaration.name : null;
     }
 
     public String translateBINOP(Node binopNode){
-        switch (binopNode.symb) {
-            case "eq":
+        switch (binopNode.kind()) {
+            case EQ:
                 return "=";
-            case "grt":
+            case GRT:
                 return ">";
-            case "add":
+            case ADD:
                 return "+";
-            case "sub":
+            case SUB:
                 return "-";
-            case "mul":
+            case MUL:
                 return "*";
-            case "div":
+            case DIV:
                 return "/";
             default:
                 break;
@@ -211,25 +245,35 @@ public class Translator {
     }
 
     public String translateBRANCH(Node branchNode){
-        Node condNode = branchNode.children.get(1);
-        Node algo1Node = branchNode.children.get(3);
-        Node algo2Node = branchNode.children.get(5);
+        StringBuilder code = new StringBuilder();
+        Deque<Object> pending = new ArrayDeque<>();
+        beginBRANCH(branchNode, pending, code);
+        translatePending(pending, code);
+        return code.toString();
+    }
+
+    // Appends the condition of a branch and pushes the rest of its
+    // translation: code1 (LABEL label1 ) code2 (GOTO label3, LABEL label2 )
+    // code3 (LABEL label3), where code2 and code3 are its two ALGOs.
+    private void beginBRANCH(Node branchNode, Deque<Object> pending, StringBuilder code){
+        Node condNode = branchNode.child(1);
+        Node algo1Node = branchNode.child(3);
+        Node algo2Node = branchNode.child(5);
         String label1 = newlabel();
         String label2 = newlabel();
         String label3 = newlabel();
 
-        String code1 = translateCOND(condNode,label1,label2);
-        String code2 = translateALGO(algo1Node);
-        String code3 = translateALGO(algo2Node);
-
-        return code1 + "(LABEL " + label1 + " ) " + code2 + " (GOTO " + label3 + ", LABEL " + label2 + " ) " + code3 + " (LABEL " + label3 + ")\r\n";  
-
+        code.append(translateCOND(condNode,label1,label2)).append("(LABEL " + label1 + " ) ");
+        pending.push(" (LABEL " + label3 + ")\r\n");
+        pending.push(algo2Node.child(1));
+        pending.push(" (GOTO " + label3 + ", LABEL " + label2 + " ) ");
+        pending.push(algo1Node.child(1));
     }
 
     public String translateCOND(Node condNode, String label1, String label2){
-        Node cond = condNode.children.get(0);
+        Node cond = condNode.child(0);
 
-        if(cond.symb.equals("SIMPLE")){
+        if(cond.kind() == NodeKind.SIMPLE){
             return translateSIMPLE(cond,label1,label2);
         }else{
             return translateCOMPOSIT(cond,label1,label2);
@@ -238,29 +282,29 @@ public class Translator {
     }
 
     public String translateSIMPLE(Node simpleNode, String label1, String label2){
-        Node binopNode = simpleNode.children.get(0);
-        Node atomic1Node = simpleNode.children.get(2);
-        Node atomic2Node = simpleNode.children.get(4);
+        Node binopNode = simpleNode.child(0);
+        Node atomic1Node = simpleNode.child(2);
+        Node atomic2Node = simpleNode.child(4);
 
         String t1 = newvar();
         String t2 = newvar();
         String code1 = translateATOMIC1(atomic1Node, t1);
         String code2 = translateATOMIC1(atomic2Node, t2);
-        String operator = translateBINOP(binopNode.children.get(0));
+        String operator = translateBINOP(binopNode.child(0));
 
         return code1+code2+"( IF " + t1 +" "+ operator +" "+ t2 + " THEN " + label1 + " ELSE " + label2 + " )\r\n";
         
     }
 
     public String translateCOMPOSIT(Node composNode, String label1, String label2 ){
-        Node opNode = composNode.children.get(0);
-        if(opNode.symb.equals("UNOP")){
-            Node SimpleNode1 = composNode.children.get(2);
+        Node opNode = composNode.child(0);
+        if(opNode.kind() == NodeKind.UNOP){
+            Node SimpleNode1 = composNode.child(2);
             return translateSIMPLE(SimpleNode1, label2, label1);
         }else{
-            Node SimpleNode1 = composNode.children.get(2);
-            Node SimpleNode2 = composNode.children.get(4);
-            if(opNode.children.get(0).equals("and")){
+            Node SimpleNode1 = composNode.child(2);
+            Node SimpleNode2 = composNode.child(4);
+            if(opNode.child(0).kind() == NodeKind.AND){
                 String arg2 = newlabel();
                 String code1 = translateSIMPLE(SimpleNode1, arg2, label2);
                 String code2 = translateSIMPLE(SimpleNode2, label1, label2);
@@ -1,5 +1,12 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
 public class TypeChecker {
 
+    private static final Pattern NUMBER_CONST = Pattern.compile("0|0\\.([0-9])*[1-9]|-0\\.([0-9])*[1-9]|[1-9]([0-9])*|-?[1-9]([0-9])*(\\.[0-9]*[1-9])?");
+    private static final Pattern TEXT_CONST = Pattern.compile("\"[A-Z][a-z]{0,7}\"");
+
     private ScopeAnalyzer scopeAnalyzer;
     private ScopeAnalyzer.Scope currentScope; 
     private boolean isCall = false;
@@ -20,42 +27,51 @@ public class TypeChecker {
     }
 
     public boolean typecheckPROG(Node progNode) {
-        return typecheckGLOBVARS(progNode.children.get(1)) && 
-               typecheckALGO(progNode.children.get(2)) &&
-               typecheckFUNCTIONS(progNode.children.get(3));
+        return typecheckGLOBVARS(progNode.child(1)) && 
+               typecheckALGO(progNode.child(2)) &&
+               typecheckFUNCTIONS(progNode.child(3));
     }
 
     public boolean typecheckGLOBVARS(Node globVarsNode) {
-        if (globVarsNode.children.isEmpty()) {
+        if (globVarsNode.isLeaf()) {
             return true;
         }
     
-        Node vtypNode = globVarsNode.children.get(0);  
-        Node vnameNode = globVarsNode.children.get(1);  
+        Node vtypNode = globVarsNode.child(0);  
+        Node vnameNode = globVarsNode.child(1);  
         String expectedType = typecheckVTYP(vtypNode);  
-        String varName = vnameNode.children.get(0).symb;   
-        String actualType = scopeAnalyzer.getVariableType(varName, currentScope);
+        String varName = vnameNode.child(0).word();   
+        String actualType = typeOf(vnameNode);
     
         if (!expectedType.equals(actualType)) {
             System.err.println("Type Error: Variable '" + varName + "' expected to be of type '" + expectedType + "', but found type '" + actualType + "'.");
             return false;
         }
     
-        return typecheckGLOBVARS(globVarsNode.children.get(2));
+        return typecheckGLOBVARS(globVarsNode.child(2));
     }
 
     private String typecheckVTYP(Node vtypNode) {
-        if (vtypNode.children.get(0).symb.equals("num")) {
-            return "num";  
-        } else if (vtypNode.children.get(0).symb.equals("text")) {
-            return "text";  
+        switch (vtypNode.child(0).kind()) {
+            case NUM:
+                return "num";  
+            case TEXT:
+                return "text";  
+            default:
+                return "u";
         }
-        return "u";
+    }
+
+    // Type of the variable a VNAME node was bound to in scope analysis, or
+    // null if it was not bound.
+    private String typeOf(Node vnameNode) {
+        ScopeAnalyzer.SymbolEntry declaration = scopeAnalyzer.variableAt(vnameNode);
+        return declaration != null ? declaration.varOrFuncType : null;
     }
 
     public String typecheckVNAME(Node vnameNode) {
-        String varName = vnameNode.children.get(0).symb;
-        String varType = scopeAnalyzer.getVariableType(varName, currentScope);
+        String varName = vnameNode.child(0).word();
+        String varType = typeOf(vnameNode);
     
         if (varType == null) {
             System.err.println("Type Error: Variable '" + varName + "' is not declared in the current or ancestor scopes.");
@@ -66,41 +82,59 @@ public class TypeChecker {
     }
 
     public boolean typecheckALGO(Node algoNode) {
-        Node instrucNode = algoNode.children.get(1);  
+        Node instrucNode = algoNode.child(1);  
         return typecheckINSTRUC(instrucNode);
     }
 
+    // Walks the INSTRUC chain in a loop rather than recursing once per
+    // command, so long programs don't overflow the stack. A BRANCH doesn't
+    // recurse either: once its condition is checked, the rest of the chain
+    // and the else part are pushed and the then part is walked next, so the
+    // commands are checked in the same order at any depth of nesting.
     public boolean typecheckINSTRUC(Node instrucNode) {
-        if (instrucNode.children.isEmpty()) {
-            return true;
-        }
-        Node nextInstrucNode;
-        Node commandNode = instrucNode.children.get(0);  
-        if(instrucNode.children.size() <= 2){
-            nextInstrucNode = instrucNode.children.get(1);
-        }else{
-            nextInstrucNode = instrucNode.children.get(2);
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(instrucNode);
+        while (!pending.isEmpty()) {
+            instrucNode = pending.pop();
+            while (!instrucNode.isLeaf()) {
+                Node commandNode = instrucNode.child(0);  
+                Node nextNode = instrucNode.childCount() <= 2 ? instrucNode.child(1) : instrucNode.child(2);
+                Node branchNode = commandNode.child(0);
+                if (branchNode.kind() == NodeKind.BRANCH) {
+                    if (!typecheckBRANCHCondition(branchNode)) {
+                        return false;
+                    }
+                    pending.push(nextNode);
+                    pending.push(branchNode.child(5).child(1));
+                    instrucNode = branchNode.child(3).child(1);
+                    continue;
+                }
+                if (!typecheckCOMMAND(commandNode)) {
+                    return false;
+                }
+                instrucNode = nextNode;
+            }
         }
-        return typecheckCOMMAND(commandNode) && typecheckINSTRUC(nextInstrucNode);
+        return true;
     }
 
     public boolean typecheckCOMMAND(Node commandNode) {
-        switch (commandNode.children.get(0).symb) {
-            case "skip":
-            case "halt":
+        switch (commandNode.child(0).kind()) {
+            case SKIP:
+            case HALT:
                 return true;  
     
-            case "print":
-                return typecheckPRINT(commandNode.children.get(1));
+            case PRINT:
+                return typecheckPRINT(commandNode.child(1));
     
-            case "return":
-                return typecheckRETURN(commandNode.children.get(1));
+            case RETURN:
+                return typecheckRETURN(commandNode.child(1));
     
-            case "ASSIGN":
-                return typecheckASSIGN(commandNode.children.get(0));
+            case ASSIGN:
+                return typecheckASSIGN(commandNode.child(0));
     
-            case "CALL":
-                String callReturnType = typecheckCALL(commandNode.children.get(0));
+            case CALL:
+                String callReturnType = typecheckCALL(commandNode.child(0));
                 if (callReturnType.equals("void")) {
                     return true;  
                 } else {
@@ -108,11 +142,11 @@ public class TypeChecker {
                     return false;
                 }
     
-            case "BRANCH":
-                return typecheckBRANCH(commandNode.children.get(0));
+            case BRANCH:
+                return typecheckBRANCH(commandNode.child(0));
     
             default:
-                System.err.println("Error: Unrecognized command '" + commandNode.symb + "'.");
+                System.err.println("Error: Unrecognized command '" + commandNode.symb() + "'.");
                 return false;
         }
     }
@@ -131,8 +165,7 @@ public class TypeChecker {
 
     public boolean typecheckRETURN(Node returnNode) {
         Node atomicNode = returnNode; 
-        String functionName = currentScope.scopeName;
-        String CurrentFuncReturnType = scopeAnalyzer.getFunctionReturnType(functionName,currentScope);
+        String CurrentFuncReturnType = currentScope.function.type;
         String atomicType = typecheckATOMIC(atomicNode);
 
         if(atomicType.equals(CurrentFuncReturnType)){
@@ -144,10 +177,10 @@ public class TypeChecker {
 
     public String typecheckCALL(Node callNode) {
         isCall = true;
-        Node fnameNode = callNode.children.get(0);
-        Node atomicNode1 = callNode.children.get(2);
-        Node atomicNode2 = callNode.children.get(4);
-        Node atomicNode3 = callNode.children.get(6);
+        Node fnameNode = callNode.child(0);
+        Node atomicNode1 = callNode.child(2);
+        Node atomicNode2 = callNode.child(4);
+        Node atomicNode3 = callNode.child(6);
 
         String atomic1Type = typecheckATOMIC(atomicNode1);
         String atomic2Type = typecheckATOMIC(atomicNode2);
@@ -161,26 +194,24 @@ public class TypeChecker {
     }
 
     public String typecheckATOMIC(Node atomicNode) {
-        Node childNode = atomicNode.children.get(0);  
-        if (childNode.symb.equals("VNAME")) {
-            return typecheckVNAME(childNode);  
-        } else if (childNode.symb.equals("CONST")) {
-            return typecheckCONST(childNode);  
-        } else {
-            System.err.println("Type Error: Unrecognized ATOMIC type.");
-            return "u";  
+        Node childNode = atomicNode.child(0);  
+        switch (childNode.kind()) {
+            case VNAME:
+                return typecheckVNAME(childNode);  
+            case CONST:
+                return typecheckCONST(childNode);  
+            default:
+                System.err.println("Type Error: Unrecognized ATOMIC type.");
+                return "u";  
         }
     }
 
     public String typecheckCONST(Node constNode) {
-        String numberPattern = "0|0\\.([0-9])*[1-9]|-0\\.([0-9])*[1-9]|[1-9]([0-9])*|-?[1-9]([0-9])*(\\.[0-9]*[1-9])?";
-        String textPattern = "\"[A-Z][a-z]{0,7}\"";
-
-        String constType = constNode.children.get(0).symb;
+        String constType = constNode.child(0).word();
        
-        if (constType.matches(numberPattern)) {
+        if (NUMBER_CONST.matcher(constType).matches()) {
             return "num";
-        } else if (constType.matches(textPattern)) {
+        } else if (TEXT_CONST.matcher(constType).matches()) {
             return "text"; 
         } else {
             System.err.println("Type Error: Unrecognized constant type.");
@@ -189,26 +220,26 @@ public class TypeChecker {
     }
 
     public boolean typecheckASSIGN(Node assignNode) {
-        Node vnameNode = assignNode.children.get(0);  
+        Node vnameNode = assignNode.child(0);  
         String vnameType = typecheckVNAME(vnameNode);  
     
-        if (assignNode.children.size() == 2 && assignNode.children.get(1).symb.equals("< input")) {
+        if (assignNode.childCount() == 2 && assignNode.child(1).kind() == NodeKind.INPUT) {
             if (vnameType.equals("num")) {
                 return true;  
             } else {
-                System.err.println("Type Error: Only numeric input is allowed, but '" + vnameNode.symb + "' is of type '" + vnameType + "'.");
+                System.err.println("Type Error: Only numeric input is allowed, but '" + vnameNode.symb() + "' is of type '" + vnameType + "'.");
                 return false;
             }
         }
     
-        if (assignNode.children.size() == 3 && assignNode.children.get(1).symb.equals("=")) {
-            Node termNode = assignNode.children.get(2);
+        if (assignNode.childCount() == 3 && assignNode.child(1).kind() == NodeKind.EQUAL) {
+            Node termNode = assignNode.child(2);
             String termType = typecheckTERM(termNode);  
        
             if (vnameType.equals(termType)) {
                 return true;  
             } else {
-                System.err.println("Type Error: Variable '" + vnameNode.children.get(0).symb + "' is of type '" + vnameType +
+                System.err.println("Type Error: Variable '" + vnameNode.child(0).word() + "' is of type '" + vnameType +
                                    "', but assigned a value of type '" + termType + "'.");
                 return false;
             }
@@ -219,24 +250,24 @@ public class TypeChecker {
     }
 
     public String typecheckTERM(Node termNode) {
-        Node childNode = termNode.children.get(0);
-        switch (childNode.symb) {
-            case "ATOMIC":
+        Node childNode = termNode.child(0);
+        switch (childNode.kind()) {
+            case ATOMIC:
                 return typecheckATOMIC(childNode);  
-            case "CALL":
+            case CALL:
                 return typecheckCALL(childNode);    
-            case "OP":
+            case OP:
                 return typecheckOP(childNode);      
             default:
-                System.err.println("Type Error: Unrecognized TERM type '" + childNode.symb + "'.");
+                System.err.println("Type Error: Unrecognized TERM type '" + childNode.symb() + "'.");
                 return "u";  
         }
     }
 
     public String typecheckOP(Node opNode) {
-        Node operatorNode = opNode.children.get(0);  
-        if (operatorNode.symb.equals("UNOP")) {
-            Node argNode = opNode.children.get(2);  
+        Node operatorNode = opNode.child(0);  
+        if (operatorNode.kind() == NodeKind.UNOP) {
+            Node argNode = opNode.child(2);  
     
             String unopType = typecheckUNOP(operatorNode);
             String argType = typecheckARG(argNode);
@@ -248,9 +279,9 @@ public class TypeChecker {
             } else {
                 return "u";  
             }
-        } else if (operatorNode.symb.equals("BINOP")) {
-            Node arg1Node = opNode.children.get(2);  
-            Node arg2Node = opNode.children.get(4);  
+        } else if (operatorNode.kind() == NodeKind.BINOP) {
+            Node arg1Node = opNode.child(2);  
+            Node arg2Node = opNode.child(4);  
             String binopType = typecheckBINOP(operatorNode);
             String arg1Type = typecheckARG(arg1Node);
             String arg2Type = typecheckARG(arg2Node);
@@ -270,23 +301,23 @@ public class TypeChecker {
     }
 
     public String typecheckARG(Node argNode) {
-        Node childNode = argNode.children.get(0); 
-        switch (childNode.symb) {
-            case "ATOMIC":
+        Node childNode = argNode.child(0); 
+        switch (childNode.kind()) {
+            case ATOMIC:
                 return typecheckATOMIC(childNode); 
-            case "OP":
+            case OP:
                 return typecheckOP(childNode);
             default:
-                System.err.println("Type Error: Unrecognized ARG type '" + childNode.symb + "'.");
+                System.err.println("Type Error: Unrecognized ARG type '" + childNode.symb() + "'.");
                 return "u"; 
         }
     }
 
     public String typecheckUNOP(Node unopNode) {
-        switch (unopNode.children.get(0).symb) {
-            case "not":
+        switch (unopNode.child(0).kind()) {
+            case NOT:
                 return "b";  
-            case "sqrt":
+            case SQRT:
                 return "n";  
             default:
                 return "u";  
@@ -294,17 +325,17 @@ public class TypeChecker {
     }
     
     public String typecheckBINOP(Node binopNode) {
-        switch (binopNode.children.get(0).symb) {
-            case "or":
-            case "and":
+        switch (binopNode.child(0).kind()) {
+            case OR:
+            case AND:
                 return "b";  
-            case "eq":
-            case "grt":
+            case EQ:
+            case GRT:
                 return "c";  
-            case "add":
-            case "sub":
-            case "mul":
-            case "div":
+            case ADD:
+            case SUB:
+            case MUL:
+            case DIV:
                 return "n";  
             default:
                 return "u";  
@@ -312,12 +343,17 @@ public class TypeChecker {
     }
 
     public boolean typecheckBRANCH(Node branchNode) {
-        Node condNode = branchNode.children.get(1); 
-        Node algo1Node = branchNode.children.get(3); 
-        Node algo2Node = branchNode.children.get(5); 
+        Node algo1Node = branchNode.child(3); 
+        Node algo2Node = branchNode.child(5); 
+
+        return typecheckBRANCHCondition(branchNode) && typecheckALGO(algo1Node) && typecheckALGO(algo2Node);
+    }
+
+    private boolean typecheckBRANCHCondition(Node branchNode) {
+        Node condNode = branchNode.child(1); 
 
         if (typecheckCOND(condNode).equals("b")) {
-            return typecheckALGO(algo1Node) && typecheckALGO(algo2Node);
+            return true;
         } else {
             System.err.println("Type Error: Condition in BRANCH must be of type 'b' (boolean).");
             return false;  
@@ -325,22 +361,22 @@ public class TypeChecker {
     }
 
     public String typecheckCOND(Node condNode) {
-        Node childNode = condNode.children.get(0);
-        switch (childNode.symb) {
-            case "SIMPLE":
+        Node childNode = condNode.child(0);
+        switch (childNode.kind()) {
+            case SIMPLE:
                 return typecheckSIMPLE(childNode);  
-            case "COMPOSIT":
+            case COMPOSIT:
                 return typecheckCOMPOSIT(childNode);  
             default:
-                System.err.println("Type Error: Unrecognized COND type '" + childNode.symb + "'.");
+                System.err.println("Type Error: Unrecognized COND type '" + childNode.symb() + "'.");
                 return "u";  
         }
     }
 
     public String typecheckSIMPLE(Node simpleNode) {
-        Node binopNode = simpleNode.children.get(0);  
-        Node atomic1Node = simpleNode.children.get(2); 
-        Node atomic2Node = simpleNode.children.get(4); 
+        Node binopNode = simpleNode.child(0);  
+        Node atomic1Node = simpleNode.child(2); 
+        Node atomic2Node = simpleNode.child(4); 
 
         String binopType = typecheckBINOP(binopNode);
         String atomic1Type = typecheckATOMIC(atomic1Node);
@@ -356,12 +392,12 @@ public class TypeChecker {
     }
 
     public String typecheckCOMPOSIT(Node compositNode) {
-        Node firstChild = compositNode.children.get(0);  
+        Node firstChild = compositNode.child(0);  
     
-        if (firstChild.symb.equals("BINOP")) {
-            Node binopNode = compositNode.children.get(0);  
-            Node simple1Node = compositNode.children.get(2); 
-            Node simple2Node = compositNode.children.get(4); 
+        if (firstChild.kind() == NodeKind.BINOP) {
+            Node binopNode = compositNode.child(0);  
+            Node simple1Node = compositNode.child(2); 
+            Node simple2Node = compositNode.child(4); 
             String binopType = typecheckBINOP(binopNode);
             String simple1Type = typecheckSIMPLE(simple1Node);
             String simple2Type = typecheckSIMPLE(simple2Node);
@@ -373,9 +409,9 @@ public class TypeChecker {
                 return "u";  
             }
     
-        } else if (firstChild.symb.equals("UNOP")) {
-            Node unopNode = compositNode.children.get(0);   
-            Node simpleNode = compositNode.children.get(2); 
+        } else if (firstChild.kind() == NodeKind.UNOP) {
+            Node unopNode = compositNode.child(0);   
+            Node simpleNode = compositNode.child(2); 
             String unopType = typecheckUNOP(unopNode);
             String simpleType = typecheckSIMPLE(simpleNode);
             System.out.println(simpleType);
@@ -395,12 +431,13 @@ public class TypeChecker {
     }
 
     public String typecheckFNAME(Node fnameNode) {
-        String functionName = fnameNode.children.get(0).symb;
+        String functionName = fnameNode.child(0).word();
+        ScopeAnalyzer.FunctionSymbolEntry function = scopeAnalyzer.functionAt(fnameNode);
         if(!isCall){
-            enterScope(scopeAnalyzer.getScopeForFunction(functionName));
+            enterScope(function != null ? function.scope : null);
         }
         isCall = false;
-        String returnType = scopeAnalyzer.getFunctionReturnType(functionName, currentScope);
+        String returnType = function != null ? function.type : null;
         if (returnType != null) {
             return returnType;  
         } else {
@@ -409,33 +446,45 @@ public class TypeChecker {
         }
     }
 
+    // Nested functions are walked the way nested branches are: after a
+    // function's own code is checked, the rest of its list is pushed and its
+    // SUBFUNCS list is walked first, so the nesting depth doesn't add to the
+    // call stack.
     public boolean typecheckFUNCTIONS(Node functionsNode) {
-        if (functionsNode.children.isEmpty()) {
-            return true;  
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(functionsNode);
+        while (!pending.isEmpty()) {
+            functionsNode = pending.pop();
+            if (functionsNode.isLeaf()) {
+                continue;
+            }
+            Node declNode = functionsNode.child(0); 
+            Node bodyNode = declNode.child(1);
+            if (!typecheckHEADER(declNode.child(0)) || !typecheckBODYCode(bodyNode)) {
+                return false;
+            }
+            pending.push(functionsNode.child(1));
+            pending.push(bodyNode.child(4).child(0));
         }
-        
-        Node declNode = functionsNode.children.get(0); 
-        Node functions2Node = functionsNode.children.get(1);  
-    
-        return typecheckDECL(declNode) && typecheckFUNCTIONS(functions2Node);
+        return true;  
     }
     
     public boolean typecheckDECL(Node declNode) {
-        Node headerNode = declNode.children.get(0);  
-        Node bodyNode = declNode.children.get(1);    
+        Node headerNode = declNode.child(0);  
+        Node bodyNode = declNode.child(1);    
 
         return typecheckHEADER(headerNode) && typecheckBODY(bodyNode);
     }
     
     public boolean typecheckHEADER(Node headerNode) {
-        Node ftypNode = headerNode.children.get(0);   
-        Node fnameNode = headerNode.children.get(1);  
-        Node vname1Node = headerNode.children.get(3); 
-        Node vname2Node = headerNode.children.get(5); 
-        Node vname3Node = headerNode.children.get(7); 
+        Node ftypNode = headerNode.child(0);   
+        Node fnameNode = headerNode.child(1);  
+        Node vname1Node = headerNode.child(3); 
+        Node vname2Node = headerNode.child(5); 
+        Node vname3Node = headerNode.child(7); 
     
         String ftypType = typecheckFTYP(ftypNode);
-        String functionName = fnameNode.children.get(0).symb;
+        String functionName = fnameNode.child(0).word();
         String symbolTableReturnType = typecheckFNAME(fnameNode);
     
         if (!ftypType.equals(symbolTableReturnType)) {
@@ -443,9 +492,9 @@ public class TypeChecker {
             return false;
         }
  
-        String vname1Type = scopeAnalyzer.getVariableType(vname1Node.children.get(0).symb, currentScope);
-        String vname2Type = scopeAnalyzer.getVariableType(vname2Node.children.get(0).symb, currentScope);
-        String vname3Type = scopeAnalyzer.getVariableType(vname3Node.children.get(0).symb, currentScope);
+        String vname1Type = typeOf(vname1Node);
+        String vname2Type = typeOf(vname2Node);
+        String vname3Type = typeOf(vname3Node);
     
         if (vname1Type.equals("num") && vname2Type.equals("num") && vname3Type.equals("num")) {
             return true;  
@@ -456,29 +505,35 @@ public class TypeChecker {
     }
 
     public String typecheckFTYP(Node ftypNode) {
-        switch (ftypNode.children.get(0).symb) {
-            case "num":
+        switch (ftypNode.child(0).kind()) {
+            case NUM:
                 return "num";  
-            case "void":
+            case VOID:
                 return "void";  
             default:
-                System.err.println("Type Error: Unrecognized FTYP '" + ftypNode.children.get(0).symb + "'.");
+                System.err.println("Type Error: Unrecognized FTYP '" + ftypNode.child(0).symb() + "'.");
                 return "u";
         }
     }
 
     public boolean typecheckBODY(Node bodyNode) {
-        Node prologNode = bodyNode.children.get(0);   
-        Node locvarsNode = bodyNode.children.get(1);  
-        Node algoNode = bodyNode.children.get(2);     
-        Node epilogNode = bodyNode.children.get(3);   
-        Node subfuncsNode = bodyNode.children.get(4); 
+        Node subfuncsNode = bodyNode.child(4); 
+    
+        return typecheckBODYCode(bodyNode) &&
+               typecheckSUBFUNCS(subfuncsNode);
+    }
+
+    // Everything in a BODY but its SUBFUNCS.
+    private boolean typecheckBODYCode(Node bodyNode) {
+        Node prologNode = bodyNode.child(0);   
+        Node locvarsNode = bodyNode.child(1);  
+        Node algoNode = bodyNode.child(2);     
+        Node epilogNode = bodyNode.child(3);   
     
         return typecheckPROLOG(prologNode) &&
                typecheckLOCVARS(locvarsNode) &&
                typecheckALGO(algoNode) &&
-               typecheckEPILOG(epilogNode) &&
-               typecheckSUBFUNCS(subfuncsNode);
+               typecheckEPILOG(epilogNode);
     }
 
     public boolean typecheckPROLOG(Node prologNode) {
@@ -490,31 +545,31 @@ public class TypeChecker {
     }
 
     public boolean typecheckLOCVARS(Node locvarsNode) {
-        Node vtyp1Node = locvarsNode.children.get(0);  
-        Node vname1Node = locvarsNode.children.get(1); 
-        Node vtyp2Node = locvarsNode.children.get(3);  
-        Node vname2Node = locvarsNode.children.get(4); 
-        Node vtyp3Node = locvarsNode.children.get(6);  
-        Node vname3Node = locvarsNode.children.get(7); 
+        Node vtyp1Node = locvarsNode.child(0);  
+        Node vname1Node = locvarsNode.child(1); 
+        Node vtyp2Node = locvarsNode.child(3);  
+        Node vname2Node = locvarsNode.child(4); 
+        Node vtyp3Node = locvarsNode.child(6);  
+        Node vname3Node = locvarsNode.child(7); 
     
         String vtyp1Type = typecheckVTYP(vtyp1Node);
-        String vname1Type = scopeAnalyzer.getVariableType(vname1Node.children.get(0).symb, currentScope);
+        String vname1Type = typeOf(vname1Node);
         if (!vtyp1Type.equals(vname1Type)) {
-            System.err.println("Type Error: Variable '" + vname1Node.children.get(0).symb + "' does not match its declared type.");
+            System.err.println("Type Error: Variable '" + vname1Node.child(0).word() + "' does not match its declared type.");
             return false;
         }
     
         String vtyp2Type = typecheckVTYP(vtyp2Node);
-        String vname2Type = scopeAnalyzer.getVariableType(vname2Node.children.get(0).symb, currentScope);
+        String vname2Type = typeOf(vname2Node);
         if (!vtyp2Type.equals(vname2Type)) {
-            System.err.println("Type Error: Variable '" + vname2Node.children.get(0).symb + "' does not match its declared type.");
+            System.err.println("Type Error: Variable '" + vname2Node.child(0).word() + "' does not match its declared type.");
             return false;
         }
     
         String vtyp3Type = typecheckVTYP(vtyp3Node);
-        String vname3Type = scopeAnalyzer.getVariableType(vname3Node.children.get(0).symb, currentScope);
+        String vname3Type = typeOf(vname3Node);
         if (!vtyp3Type.equals(vname3Type)) {
-            System.err.println("Type Error: Variable '" + vname3Node.children.get(0).symb + "' does not match its declared type.");
+            System.err.println("Type Error: Variable '" + vname3Node.child(0).word() + "' does not match its declared type.");
             return false;
         }
     
@@ -522,7 +577,7 @@ public class TypeChecker {
     }
     
     public boolean typecheckSUBFUNCS(Node subfuncsNode) {
-        return typecheckFUNCTIONS(subfuncsNode.children.get(0));  
+        return typecheckFUNCTIONS(subfuncsNode.child(0));  
     }
     
     public boolean depthFirstTraversal(Node currentNode) {
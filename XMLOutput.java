@@ -0,0 +1,63 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+// Shared plumbing for the XML artifacts. Documents are streamed element by
+// element into a buffered file channel instead of being assembled in memory
+// first; indentation is written by the callers so the files keep the layout
+// they had when they were produced through DOM and a Transformer.
+//
+// The phases hand their results to each other through BinaryFormat files;
+// the XML files are a debug export that -Dcompiler.xml=true turns on. It is
+// also on when scope analysis is told to read syntax_tree.xml back.
+class XMLOutput {
+
+    static final boolean ENABLED = Boolean.getBoolean("compiler.xml") || ScopeAnalyzer.XML_INPUT;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+    private static final char[] INDENT = ("\n" + " ".repeat(256)).toCharArray();
+
+    static OutputStream open(String filePath) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    }
+
+    static XMLStreamWriter writer(OutputStream out) throws XMLStreamException {
+        return FACTORY.createXMLStreamWriter(out, "UTF-8");
+    }
+
+    static XMLStreamWriter writer(Writer out) throws XMLStreamException {
+        return FACTORY.createXMLStreamWriter(out);
+    }
+
+    // Line break followed by four spaces per level of nesting.
+    static void newLine(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        int spaces = depth * 4;
+        int count = Math.min(spaces, INDENT.length - 1);
+        writer.writeCharacters(INDENT, 0, count + 1);
+        for (spaces -= count; spaces > 0; spaces -= count) {
+            count = Math.min(spaces, INDENT.length - 1);
+            writer.writeCharacters(INDENT, 1, count);
+        }
+    }
+
+    static void element(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+        if (text.isEmpty()) {
+            writer.writeEmptyElement(name);
+            return;
+        }
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+}